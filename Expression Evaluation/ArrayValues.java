@@ -0,0 +1,223 @@
+package app;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Storage for the items of an array variable. Items that have not been set are zero,
+ * as in a freshly allocated int[]. The backing is picked from the declared size and the
+ * number of items that are set: a dense int[] for well populated arrays, an open
+ * addressing hash table for sparse ones, and direct (off-heap) memory for dense arrays
+ * too large to keep on the heap.
+ *
+ */
+public abstract class ArrayValues {
+
+	/**
+	 * Default size in bytes above which dense arrays are allocated off the heap: a
+	 * quarter of the largest heap. Off-heap memory is limited by -XX:MaxDirectMemorySize
+	 * rather than by the heap size.
+	 */
+	public static final long OFF_HEAP_THRESHOLD = Runtime.getRuntime().maxMemory() / 4;
+
+	/**
+	 * Declared size of the array
+	 */
+	protected final int length;
+
+	protected ArrayValues(int length) {
+		if (length < 0) {
+			throw new NegativeArraySizeException(String.valueOf(length));
+		}
+		this.length = length;
+	}
+
+	/**
+	 * Allocates storage for an array, picking the backing from its density, and keeping
+	 * dense arrays of more than OFF_HEAP_THRESHOLD bytes off the heap
+	 *
+	 * @param length Declared size of the array
+	 * @param populated Number of items that will be set
+	 * @return Storage with all items zero
+	 */
+	public static ArrayValues allocate(int length, int populated) {
+		return allocate(length, populated, OFF_HEAP_THRESHOLD);
+	}
+
+	/**
+	 * Allocates storage for an array, picking the backing from its density
+	 *
+	 * @param length Declared size of the array
+	 * @param populated Number of items that will be set
+	 * @param offHeapThreshold Size in bytes above which a dense array is allocated off the heap
+	 * @return Storage with all items zero
+	 */
+	public static ArrayValues allocate(int length, int populated, long offHeapThreshold) {
+		// a hash table slot costs 8 bytes and is at most half full, a dense item 4 bytes
+		if ((long) populated * 4 < length) {
+			return new Sparse(length, populated);
+		}
+		if ((long) length * 4 > offHeapThreshold) {
+			return new OffHeap(length);
+		}
+		return new Dense(new int[length]);
+	}
+
+	/**
+	 * Returns the declared size of the array
+	 *
+	 * @return Number of items
+	 */
+	public final int length() {
+		return length;
+	}
+
+	/**
+	 * Returns an item
+	 *
+	 * @param index Index of the item
+	 * @return Value of the item
+	 * @throws ArrayIndexOutOfBoundsException If the index is outside the array
+	 */
+	public abstract int get(int index);
+
+	/**
+	 * Sets an item
+	 *
+	 * @param index Index of the item
+	 * @param value New value
+	 * @throws ArrayIndexOutOfBoundsException If the index is outside the array
+	 */
+	public abstract void set(int index, int value);
+
+	protected final void check(int index) {
+		if (index < 0 || index >= length) {
+			throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+		}
+	}
+
+	/**
+	 * Items stored in an int[], as in Array.values
+	 */
+	public static final class Dense extends ArrayValues {
+		final int[] values;
+
+		/**
+		 * Wraps an existing values array, without copying it
+		 *
+		 * @param values Values array
+		 */
+		public Dense(int[] values) {
+			super(values.length);
+			this.values = values;
+		}
+
+		public int get(int index) {
+			return values[index];
+		}
+
+		public void set(int index, int value) {
+			values[index] = value;
+		}
+	}
+
+	/**
+	 * Items stored in an open addressing hash table of index/value pairs, holding only
+	 * the items that are not zero
+	 */
+	public static final class Sparse extends ArrayValues {
+		/**
+		 * Index + 1 of the item in each table slot, 0 if the slot is empty
+		 */
+		private int[] keys;
+		private int[] vals;
+		private int size;
+		private int shift;
+
+		Sparse(int length, int expected) {
+			super(length);
+			int cap = 8;
+			while (cap < expected * 2) {
+				cap <<= 1;
+			}
+			keys = new int[cap];
+			vals = new int[cap];
+			shift = 32 - Integer.numberOfTrailingZeros(cap);
+		}
+
+		private int slot(int key) {
+			int mask = keys.length - 1;
+			int s = (key * 0x9E3779B9) >>> shift;
+			while (keys[s] != 0 && keys[s] != key) {
+				s = (s + 1) & mask;
+			}
+			return s;
+		}
+
+		public int get(int index) {
+			check(index);
+			int s = slot(index + 1);
+			return keys[s] == 0 ? 0 : vals[s];
+		}
+
+		public void set(int index, int value) {
+			check(index);
+			int s = slot(index + 1);
+			if (keys[s] == 0) {
+				if (value == 0) {
+					return;
+				}
+				if ((size + 1) * 2 > keys.length) {
+					grow();
+					s = slot(index + 1);
+				}
+				keys[s] = index + 1;
+				size++;
+			}
+			vals[s] = value;
+		}
+
+		private void grow() {
+			int[] oldKeys = keys, oldVals = vals;
+			keys = new int[oldKeys.length * 2];
+			vals = new int[oldKeys.length * 2];
+			shift--;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					int s = slot(oldKeys[i]);
+					keys[s] = oldKeys[i];
+					vals[s] = oldVals[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Items stored in pages of direct memory, outside the Java heap
+	 */
+	public static final class OffHeap extends ArrayValues {
+		private static final int PAGE_SHIFT = 26;
+		private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+		private final IntBuffer[] pages;
+
+		OffHeap(int length) {
+			super(length);
+			pages = new IntBuffer[(int) (((long) length + PAGE_MASK) >>> PAGE_SHIFT)];
+			for (int i = 0; i < pages.length; i++) {
+				int n = Math.min(1 << PAGE_SHIFT, length - (i << PAGE_SHIFT));
+				pages[i] = ByteBuffer.allocateDirect(n * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+			}
+		}
+
+		public int get(int index) {
+			check(index);
+			return pages[index >>> PAGE_SHIFT].get(index & PAGE_MASK);
+		}
+
+		public void set(int index, int value) {
+			check(index);
+			pages[index >>> PAGE_SHIFT].put(index & PAGE_MASK, value);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,846 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An expression that has been parsed once into a tree of operator nodes. Simple variables
+ * and arrays are bound by slot - the position of the name in the lists built by
+ * Expression.makeVariableLists, or in a shared SymbolTable - so evaluating the tree does
+ * no parsing, no name lookups and no allocation. The grammar is the one accepted by
+ * Expression.evaluate: numbers, simple variables, array items name[expr], parentheses
+ * and the four operators, with the usual precedence and left to right evaluation.
+ * 
+ * A compiled expression is immutable, and any number of threads may evaluate it at once,
+ * each against its own symbol table or against a shared table that is not being updated.
+ * The only per-evaluation state, the values of shared subexpressions of an optimized
+ * expression, is kept in a Scratch object - one per thread unless given explicitly.
+ *
+ */
+public final class CompiledExpression {
+
+	/**
+	 * Number of rows evaluated together, operator at a time, by evaluateBatch
+	 */
+	public static final int CHUNK = 1024;
+
+	/**
+	 * Default row count below which a parallel batch is not split any further
+	 */
+	public static final int PARALLEL_CUTOFF = 64 * CHUNK;
+
+	/**
+	 * Expression text this object was compiled from
+	 */
+	private final String source;
+
+	/**
+	 * Root of the operator tree
+	 */
+	private final Node root;
+
+	/**
+	 * Simple variable names used by the expression, in order of first appearance
+	 */
+	private final String[] varNames;
+
+	/**
+	 * Slot of each simple variable in varNames
+	 */
+	private final int[] varSlots;
+
+	/**
+	 * Array names used by the expression, in order of first appearance
+	 */
+	private final String[] arrayNames;
+
+	/**
+	 * Slot of each array in arrayNames
+	 */
+	private final int[] arraySlots;
+
+	/**
+	 * Subexpressions used more than once, evaluated in order into temps before the root.
+	 * Empty unless the expression has been optimized.
+	 */
+	private final Node[] shared;
+
+	/**
+	 * Scratch state of each thread evaluating this expression
+	 */
+	private final ThreadLocal<Scratch> scratch;
+
+	/**
+	 * Number of nodes removed by optimize
+	 */
+	private final int removed;
+
+	/**
+	 * Number of scratch chunks needed to evaluate the tree a chunk at a time
+	 */
+	private final int scratchDepth;
+
+	private CompiledExpression(String source, Node root, LinkedHashMap<String,Integer> vars,
+			LinkedHashMap<String,Integer> arrays) {
+		this.source = source;
+		this.root = root;
+		varNames = vars.keySet().toArray(new String[0]);
+		varSlots = slots(vars);
+		arrayNames = arrays.keySet().toArray(new String[0]);
+		arraySlots = slots(arrays);
+		shared = new Node[0];
+		scratch = ThreadLocal.withInitial(this::newScratch);
+		removed = 0;
+		scratchDepth = root.scratch();
+	}
+
+	/**
+	 * Copies a compiled expression with an optimized operator tree
+	 */
+	CompiledExpression(CompiledExpression expr, Node root, Node[] shared, int removed) {
+		source = expr.source;
+		this.root = root;
+		varNames = expr.varNames;
+		varSlots = expr.varSlots;
+		arrayNames = expr.arrayNames;
+		arraySlots = expr.arraySlots;
+		this.shared = shared;
+		scratch = ThreadLocal.withInitial(this::newScratch);
+		this.removed = removed;
+		int depth = root.scratch();
+		for (Node n : shared) {
+			depth = Math.max(depth, n.scratch());
+		}
+		scratchDepth = depth;
+	}
+
+	private static int[] slots(LinkedHashMap<String,Integer> names) {
+		int[] slots = new int[names.size()];
+		int i = 0;
+		for (int slot : names.values()) {
+			slots[i++] = slot;
+		}
+		return slots;
+	}
+
+	/**
+	 * Parses an expression into its compiled form. Slots are assigned in order of first
+	 * appearance, which is the same order in which makeVariableLists adds names to its lists.
+	 *
+	 * @param expr The expression
+	 * @return Compiled expression
+	 * @throws IllegalArgumentException If the expression is malformed
+	 */
+	public static CompiledExpression compile(String expr) {
+		return compile(expr, new SymbolTable());
+	}
+
+	/**
+	 * Parses an expression into its compiled form, bound to the slots of a symbol table.
+	 * Names that are not yet in the table are added to it.
+	 *
+	 * @param expr The expression
+	 * @param table The symbol table
+	 * @return Compiled expression
+	 * @throws IllegalArgumentException If the expression is malformed
+	 */
+	public static CompiledExpression compile(String expr, SymbolTable table) {
+		Parser p = new Parser(expr, table);
+		Node root = p.parseSum();
+		if (p.tok != null) {
+			throw new IllegalArgumentException("Unexpected '" + p.tok + "' in " + expr);
+		}
+		return new CompiledExpression(expr, root, p.varSlots, p.arraySlots);
+	}
+
+	/**
+	 * Evaluates the expression. The lists are wrapped in a symbol table on each call; for
+	 * repeated evaluation, compile against a SymbolTable and evaluate with that instead.
+	 *
+	 * @param vars The variables array list, populated by makeVariableLists for this expression
+	 * @param arrays The arrays array list, populated by makeVariableLists for this expression
+	 * @return Result of evaluation
+	 */
+	public float evaluate(ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		return evaluate(SymbolTable.wrap(vars, arrays));
+	}
+
+	/**
+	 * Evaluates the expression.
+	 *
+	 * @param table The symbol table this expression was compiled against, with values loaded
+	 * @return Result of evaluation
+	 */
+	public float evaluate(SymbolTable table) {
+		if (shared.length == 0) {
+			return root.eval(table, null);
+		}
+		return evaluate(table, scratch.get());
+	}
+
+	/**
+	 * Evaluates the expression using the given scratch state, which must not be in use
+	 * by another thread at the same time.
+	 *
+	 * @param table The symbol table this expression was compiled against, with values loaded
+	 * @param s Scratch state, from newScratch
+	 * @return Result of evaluation
+	 */
+	public float evaluate(SymbolTable table, Scratch s) {
+		float[] temps = s.temps;
+		for (int i = 0; i < shared.length; i++) {
+			temps[i] = shared[i].eval(table, temps);
+		}
+		return root.eval(table, temps);
+	}
+
+	/**
+	 * Per-thread state for evaluating an expression
+	 */
+	public static final class Scratch {
+		final float[] temps;
+
+		Scratch(int temps) {
+			this.temps = new float[temps];
+		}
+	}
+
+	/**
+	 * Creates scratch state for evaluating this expression
+	 *
+	 * @return Scratch state
+	 */
+	public Scratch newScratch() {
+		return new Scratch(shared.length);
+	}
+
+	/**
+	 * Evaluates the expression against each of a list of symbol tables, in tasks run
+	 * by an executor - a fork-join pool, or a thread per task executor. The tables are
+	 * split into a few ranges per available processor, each evaluated by one task.
+	 *
+	 * @param tables Symbol tables, each compiled against like the one this expression was
+	 * @param executor Executor in which to run the evaluations
+	 * @return Result of evaluation for each table
+	 * @throws InterruptedException If interrupted while waiting for the tasks
+	 * @throws ExecutionException If an evaluation fails
+	 */
+	public float[] evaluateAll(final List<SymbolTable> tables, ExecutorService executor)
+	throws InterruptedException, ExecutionException {
+		final float[] results = new float[tables.size()];
+		int tasks = Math.min(tables.size(), 4 * Runtime.getRuntime().availableProcessors());
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < tasks; i++) {
+			final int from = (int) ((long) tables.size() * i / tasks);
+			final int to = (int) ((long) tables.size() * (i + 1) / tasks);
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					Scratch s = newScratch();
+					for (int j = from; j < to; j++) {
+						results[j] = evaluate(tables.get(j), s);
+					}
+				}
+			}));
+		}
+		for (Future<?> f : futures) {
+			f.get();
+		}
+		return results;
+	}
+
+	/**
+	 * Returns an optimized copy of this expression. Constant subexpressions are folded,
+	 * algebraic identities that hold exactly in float arithmetic (x*1, x/1, x-0, --x and
+	 * the like) are simplified, and identical subexpressions, including repeated array
+	 * items, are evaluated only once per evaluation. Results are identical to those of
+	 * the unoptimized expression.
+	 *
+	 * @return Optimized expression
+	 */
+	public CompiledExpression optimize() {
+		return ExpressionOptimizer.optimize(this);
+	}
+
+	/**
+	 * Returns the number of operator tree nodes removed by optimize
+	 *
+	 * @return Nodes removed, 0 if this expression has not been optimized
+	 */
+	public int removedNodes() {
+		return removed;
+	}
+
+	/**
+	 * Returns the slots of the simple variables used by this expression
+	 */
+	int[] variableSlots() {
+		return varSlots;
+	}
+
+	/**
+	 * Returns the slots of the arrays used by this expression
+	 */
+	int[] arraySlots() {
+		return arraySlots;
+	}
+
+	/**
+	 * Returns the root of the operator tree
+	 */
+	Node root() {
+		return root;
+	}
+
+	/**
+	 * Evaluates the expression once per row of a batch of variable bindings. Rows are
+	 * processed CHUNK at a time, one operator over the whole chunk before the next, which
+	 * leaves the JIT simple counted loops over float arrays to vectorize.
+	 *
+	 * @param columns Values of the simple variables, one column per variable
+	 * @param arrays The arrays array list, populated by makeVariableLists for this expression
+	 * @param out Receives the result for each row
+	 * @param rows Number of rows to evaluate
+	 */
+	public void evaluateBatch(Columns columns, ArrayList<Array> arrays, float[] out, int rows) {
+		evaluateBatch(columns, SymbolTable.wrap(new ArrayList<Variable>(), arrays), out, rows);
+	}
+
+	/**
+	 * Evaluates the expression once per row of a batch of variable bindings, taking array
+	 * items from a symbol table.
+	 *
+	 * @param columns Values of the simple variables, one column per variable
+	 * @param table The symbol table this expression was compiled against, with arrays loaded
+	 * @param out Receives the result for each row
+	 * @param rows Number of rows to evaluate
+	 */
+	public void evaluateBatch(Columns columns, SymbolTable table, float[] out, int rows) {
+		evaluateRange(columns, table, out, 0, rows);
+	}
+
+	/**
+	 * Evaluates a batch like evaluateBatch, splitting the rows into ranges that are
+	 * evaluated in parallel in the given fork-join pool.
+	 *
+	 * @param columns Values of the simple variables, one column per variable
+	 * @param arrays The arrays array list, populated by makeVariableLists for this expression
+	 * @param out Receives the result for each row
+	 * @param rows Number of rows to evaluate
+	 * @param pool Pool in which to run the evaluation
+	 */
+	public void evaluateBatch(Columns columns, ArrayList<Array> arrays, float[] out, int rows,
+			ForkJoinPool pool) {
+		evaluateBatch(columns, SymbolTable.wrap(new ArrayList<Variable>(), arrays), out, rows, pool);
+	}
+
+	/**
+	 * Evaluates a batch like evaluateBatch, splitting the rows into ranges that are
+	 * evaluated in parallel in the given fork-join pool.
+	 *
+	 * @param columns Values of the simple variables, one column per variable
+	 * @param table The symbol table this expression was compiled against, with arrays loaded
+	 * @param out Receives the result for each row
+	 * @param rows Number of rows to evaluate
+	 * @param pool Pool in which to run the evaluation
+	 */
+	public void evaluateBatch(Columns columns, SymbolTable table, float[] out, int rows,
+			ForkJoinPool pool) {
+		evaluateBatch(columns, table, out, rows, pool, PARALLEL_CUTOFF);
+	}
+
+	/**
+	 * Evaluates a batch like evaluateBatch, splitting the rows into ranges of at most
+	 * cutoff rows that are evaluated in parallel in the given fork-join pool. Ranges are
+	 * never split below two chunks.
+	 *
+	 * @param columns Values of the simple variables, one column per variable
+	 * @param table The symbol table this expression was compiled against, with arrays loaded
+	 * @param out Receives the result for each row
+	 * @param rows Number of rows to evaluate
+	 * @param pool Pool in which to run the evaluation
+	 * @param cutoff Row count below which a range is not split any further
+	 * @throws IllegalArgumentException If cutoff is not positive
+	 */
+	public void evaluateBatch(Columns columns, SymbolTable table, float[] out, int rows,
+			ForkJoinPool pool, int cutoff) {
+		if (cutoff < 1) {
+			throw new IllegalArgumentException("Cutoff must be positive: " + cutoff);
+		}
+		pool.invoke(new BatchTask(columns, table, out, 0, rows, Math.max(cutoff, 2 * CHUNK)));
+	}
+
+	private void evaluateRange(Columns columns, SymbolTable table, float[] out, int from, int to) {
+		columns.check(to);
+		float[] chunk = new float[CHUNK];
+		// shared subexpression chunks first, then the operand scratch
+		float[][] work = new float[shared.length + scratchDepth][CHUNK];
+		for (int start = from; start < to; start += CHUNK) {
+			int len = Math.min(CHUNK, to - start);
+			for (int i = 0; i < shared.length; i++) {
+				shared[i].evalChunk(columns, table, start, len, work[i], work, shared.length);
+			}
+			root.evalChunk(columns, table, start, len, chunk, work, shared.length);
+			System.arraycopy(chunk, 0, out, start, len);
+		}
+	}
+
+	/**
+	 * Fork-join task evaluating the rows from..to-1 of a batch
+	 */
+	private final class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Columns columns;
+		final SymbolTable table;
+		final float[] out;
+		final int from, to, cutoff;
+
+		BatchTask(Columns columns, SymbolTable table, float[] out, int from, int to, int cutoff) {
+			this.columns = columns;
+			this.table = table;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+			this.cutoff = cutoff;
+		}
+
+		protected void compute() {
+			if (to - from <= cutoff) {
+				evaluateRange(columns, table, out, from, to);
+				return;
+			}
+			// split on a chunk boundary
+			int mid = from + ((to - from) / 2 / CHUNK) * CHUNK;
+			invokeAll(new BatchTask(columns, table, out, from, mid, cutoff),
+					new BatchTask(columns, table, out, mid, to, cutoff));
+		}
+	}
+
+	/**
+	 * Column bindings for the simple variables of an expression, one float[] or int[]
+	 * column per variable, each with one value per row.
+	 */
+	public static final class Columns {
+		private final String[] names;
+		private final int[] slots;
+		final float[][] floats;
+		final int[][] ints;
+
+		/**
+		 * Creates an empty set of columns for the variables of an expression
+		 *
+		 * @param expr Compiled expression
+		 */
+		public Columns(CompiledExpression expr) {
+			names = expr.varNames;
+			slots = expr.varSlots;
+			int n = 0;
+			for (int slot : slots) {
+				n = Math.max(n, slot + 1);
+			}
+			floats = new float[n][];
+			ints = new int[n][];
+		}
+
+		/**
+		 * Binds a variable to a column of float values
+		 *
+		 * @param name Variable name
+		 * @param column Value of the variable for each row
+		 * @throws IllegalArgumentException If the expression has no such variable
+		 */
+		public void set(String name, float[] column) {
+			int i = slot(name);
+			floats[i] = column;
+			ints[i] = null;
+		}
+
+		/**
+		 * Binds a variable to a column of int values
+		 *
+		 * @param name Variable name
+		 * @param column Value of the variable for each row
+		 * @throws IllegalArgumentException If the expression has no such variable
+		 */
+		public void set(String name, int[] column) {
+			int i = slot(name);
+			ints[i] = column;
+			floats[i] = null;
+		}
+
+		private int slot(String name) {
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equals(name)) {
+					return slots[i];
+				}
+			}
+			throw new IllegalArgumentException("No variable " + name);
+		}
+
+		void check(int rows) {
+			for (int i = 0; i < names.length; i++) {
+				int s = slots[i];
+				int len = floats[s] != null ? floats[s].length : ints[s] != null ? ints[s].length : -1;
+				if (len == -1) {
+					throw new IllegalStateException("No column for variable " + names[i]);
+				}
+				if (len < rows) {
+					throw new IllegalArgumentException("Column " + names[i] + " is shorter than " + rows);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the simple variable names used by this expression, in order of first appearance
+	 *
+	 * @return Variable names
+	 */
+	public String[] variableNames() {
+		return varNames.clone();
+	}
+
+	/**
+	 * Returns the array names used by this expression, in order of first appearance
+	 *
+	 * @return Array names
+	 */
+	public String[] arrayNames() {
+		return arrayNames.clone();
+	}
+
+	public String toString() {
+		return source;
+	}
+
+	/**
+	 * A node of the operator tree
+	 */
+	static abstract class Node {
+		abstract float eval(SymbolTable t, float[] temps);
+
+		/**
+		 * Evaluates rows from..from+len-1 into out[0..len-1]. Nodes at the given depth
+		 * may use scratch[depth] and up for their operands.
+		 */
+		abstract void evalChunk(Columns cols, SymbolTable t, int from, int len,
+				float[] out, float[][] scratch, int depth);
+
+		/**
+		 * Number of scratch chunks needed by evalChunk
+		 */
+		abstract int scratch();
+	}
+
+	static final class Const extends Node {
+		final float value;
+		Const(float value) {
+			this.value = value;
+		}
+		float eval(SymbolTable t, float[] temps) {
+			return value;
+		}
+		public boolean equals(Object o) {
+			return o instanceof Const && Float.floatToIntBits(value) == Float.floatToIntBits(((Const) o).value);
+		}
+		public int hashCode() {
+			return Float.floatToIntBits(value);
+		}
+		void evalChunk(Columns cols, SymbolTable t, int from, int len,
+				float[] out, float[][] scratch, int depth) {
+			for (int i = 0; i < len; i++) {
+				out[i] = value;
+			}
+		}
+		int scratch() {
+			return 0;
+		}
+	}
+
+	static final class Var extends Node {
+		final int slot;
+		Var(int slot) {
+			this.slot = slot;
+		}
+		float eval(SymbolTable t, float[] temps) {
+			return t.vars.get(slot).value;
+		}
+		public boolean equals(Object o) {
+			return o instanceof Var && slot == ((Var) o).slot;
+		}
+		public int hashCode() {
+			return slot;
+		}
+		void evalChunk(Columns cols, SymbolTable t, int from, int len,
+				float[] out, float[][] scratch, int depth) {
+			float[] f = cols.floats[slot];
+			if (f != null) {
+				System.arraycopy(f, from, out, 0, len);
+				return;
+			}
+			int[] n = cols.ints[slot];
+			for (int i = 0; i < len; i++) {
+				out[i] = n[from + i];
+			}
+		}
+		int scratch() {
+			return 0;
+		}
+	}
+
+	static final class Item extends Node {
+		final int slot;
+		final Node index;
+		Item(int slot, Node index) {
+			this.slot = slot;
+			this.index = index;
+		}
+		float eval(SymbolTable t, float[] temps) {
+			return t.item(slot, Math.round(index.eval(t, temps)));
+		}
+		public boolean equals(Object o) {
+			return o instanceof Item && slot == ((Item) o).slot && index == ((Item) o).index;
+		}
+		public int hashCode() {
+			return 31 * slot + System.identityHashCode(index);
+		}
+		void evalChunk(Columns cols, SymbolTable t, int from, int len,
+				float[] out, float[][] scratch, int depth) {
+			index.evalChunk(cols, t, from, len, out, scratch, depth);
+			ArrayValues b = t.backing(slot);
+			if (b == null) {
+				int[] values = t.arrays.get(slot).values;
+				for (int i = 0; i < len; i++) {
+					out[i] = values[Math.round(out[i])];
+				}
+			} else {
+				for (int i = 0; i < len; i++) {
+					out[i] = b.get(Math.round(out[i]));
+				}
+			}
+		}
+		int scratch() {
+			return index.scratch();
+		}
+	}
+
+	static final class Neg extends Node {
+		final Node operand;
+		Neg(Node operand) {
+			this.operand = operand;
+		}
+		float eval(SymbolTable t, float[] temps) {
+			return -operand.eval(t, temps);
+		}
+		public boolean equals(Object o) {
+			return o instanceof Neg && operand == ((Neg) o).operand;
+		}
+		public int hashCode() {
+			return ~System.identityHashCode(operand);
+		}
+		void evalChunk(Columns cols, SymbolTable t, int from, int len,
+				float[] out, float[][] scratch, int depth) {
+			operand.evalChunk(cols, t, from, len, out, scratch, depth);
+			for (int i = 0; i < len; i++) {
+				out[i] = -out[i];
+			}
+		}
+		int scratch() {
+			return operand.scratch();
+		}
+	}
+
+	static final class Binary extends Node {
+		final char op;
+		final Node left, right;
+		Binary(char op, Node left, Node right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+		float eval(SymbolTable t, float[] temps) {
+			float a = left.eval(t, temps);
+			float b = right.eval(t, temps);
+			switch (op) {
+			case '+': return a + b;
+			case '-': return a - b;
+			case '*': return a * b;
+			default: return a / b;
+			}
+		}
+		public boolean equals(Object o) {
+			if (!(o instanceof Binary)) {
+				return false;
+			}
+			Binary b = (Binary) o;
+			return op == b.op && left == b.left && right == b.right;
+		}
+		public int hashCode() {
+			return (op * 31 + System.identityHashCode(left)) * 31 + System.identityHashCode(right);
+		}
+		void evalChunk(Columns cols, SymbolTable t, int from, int len,
+				float[] out, float[][] scratch, int depth) {
+			float[] tmp = scratch[depth];
+			left.evalChunk(cols, t, from, len, out, scratch, depth);
+			right.evalChunk(cols, t, from, len, tmp, scratch, depth + 1);
+			switch (op) {
+			case '+':
+				for (int i = 0; i < len; i++) out[i] += tmp[i];
+				break;
+			case '-':
+				for (int i = 0; i < len; i++) out[i] -= tmp[i];
+				break;
+			case '*':
+				for (int i = 0; i < len; i++) out[i] *= tmp[i];
+				break;
+			default:
+				for (int i = 0; i < len; i++) out[i] /= tmp[i];
+			}
+		}
+		int scratch() {
+			return Math.max(left.scratch(), right.scratch() + 1);
+		}
+	}
+
+	/**
+	 * Reference to the value of a shared subexpression, computed earlier in the same
+	 * evaluation
+	 */
+	static final class Temp extends Node {
+		final int temp;
+		Temp(int temp) {
+			this.temp = temp;
+		}
+		float eval(SymbolTable t, float[] temps) {
+			return temps[temp];
+		}
+		void evalChunk(Columns cols, SymbolTable t, int from, int len,
+				float[] out, float[][] scratch, int depth) {
+			System.arraycopy(scratch[temp], 0, out, 0, len);
+		}
+		int scratch() {
+			return 0;
+		}
+	}
+
+	/**
+	 * Recursive descent parser over the tokens produced by Expression.delims
+	 */
+	private static final class Parser {
+		final String expr;
+		final StringTokenizer st;
+		final SymbolTable table;
+
+		/**
+		 * Names used by the expression, with their slots in the table
+		 */
+		final LinkedHashMap<String,Integer> varSlots = new LinkedHashMap<String,Integer>();
+		final LinkedHashMap<String,Integer> arraySlots = new LinkedHashMap<String,Integer>();
+
+		/**
+		 * Current token, null at end of input
+		 */
+		String tok;
+
+		Parser(String expr, SymbolTable table) {
+			this.expr = expr;
+			this.table = table;
+			st = new StringTokenizer(expr, Expression.delims, true);
+			advance();
+		}
+
+		void advance() {
+			tok = null;
+			while (st.hasMoreTokens()) {
+				String t = st.nextToken();
+				if (!t.equals(" ") && !t.equals("\t")) {
+					tok = t;
+					return;
+				}
+			}
+		}
+
+		void expect(String t) {
+			if (tok == null || !tok.equals(t)) {
+				throw new IllegalArgumentException("Expected '" + t + "' in " + expr);
+			}
+			advance();
+		}
+
+		Node parseSum() {
+			Node left = parseProduct();
+			while (tok != null && (tok.equals("+") || tok.equals("-"))) {
+				char op = tok.charAt(0);
+				advance();
+				left = new Binary(op, left, parseProduct());
+			}
+			return left;
+		}
+
+		Node parseProduct() {
+			Node left = parseFactor();
+			while (tok != null && (tok.equals("*") || tok.equals("/"))) {
+				char op = tok.charAt(0);
+				advance();
+				left = new Binary(op, left, parseFactor());
+			}
+			return left;
+		}
+
+		Node parseFactor() {
+			if (tok == null) {
+				throw new IllegalArgumentException("Unexpected end of " + expr);
+			}
+			if (tok.equals("-")) {
+				advance();
+				return new Neg(parseFactor());
+			}
+			if (tok.equals("(")) {
+				advance();
+				Node inner = parseSum();
+				expect(")");
+				return inner;
+			}
+			char c = tok.charAt(0);
+			if (Character.isDigit(c) || c == '.') {
+				float value;
+				try {
+					value = Float.parseFloat(tok);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Bad number '" + tok + "' in " + expr);
+				}
+				advance();
+				return new Const(value);
+			}
+			if (!Character.isLetter(c)) {
+				throw new IllegalArgumentException("Unexpected '" + tok + "' in " + expr);
+			}
+			String name = tok;
+			advance();
+			if (tok != null && tok.equals("[")) {
+				advance();
+				Integer slot = arraySlots.get(name);
+				if (slot == null) {
+					slot = table.addArray(name);
+					arraySlots.put(name, slot);
+				}
+				Node index = parseSum();
+				expect("]");
+				return new Item(slot, index);
+			}
+			Integer slot = varSlots.get(name);
+			if (slot == null) {
+				slot = table.addVariable(name);
+				varSlots.put(name, slot);
+			}
+			return new Var(slot);
+		}
+	}
+}
\ No newline at end of file
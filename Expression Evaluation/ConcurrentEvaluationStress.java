@@ -0,0 +1,180 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress check of an optimized CompiledExpression evaluated on many threads at once.
+ * Each expression is compiled once, optimized, and evaluated against many symbol tables
+ * holding random values: by evaluateAll in a fork-join pool and in a fixed thread pool,
+ * and by threads that share the tables, each with a Scratch of its own or with the
+ * expression's per-thread scratch. Every result must be bit for bit the one the
+ * unoptimized expression gives when the tables are evaluated one after the other.
+ *
+ * Usage: java app.ConcurrentEvaluationStress [threads [tables]]. Exits with status 1 on
+ * the first wrong result.
+ *
+ */
+public final class ConcurrentEvaluationStress {
+
+	/**
+	 * Declared size of every array; array items are in 0..SIZE-1 so they can index arrays
+	 */
+	static final int SIZE = 64;
+
+	/**
+	 * Number of times each way of evaluating is repeated
+	 */
+	static final int ROUNDS = 10;
+
+	/**
+	 * Expressions with repeated subexpressions and array items, for the optimizer to share
+	 */
+	private static final String[] EXPRESSIONS = {
+		"(a*b+c)*(a*b+c) - A[c]*B[A[c]] + (a*b+c)/(d+1)",
+		"A[B[c]] + A[B[c]]*(a-b) - B[A[B[c]]]/(a*b+c+1) + a*1 - d/1 + (c-0)",
+		"((a+b)*(c+d) - (a+b)/(c+d+1))*A[a] + B[A[a]]*A[a] + 2*3*d - (a+b)*(c+d)",
+		"a/(b-c) + A[d-d]*B[b] + (a/(b-c))*(a/(b-c)) - B[B[b]]"
+	};
+
+	private final int threads;
+	private final int count;
+
+	private ConcurrentEvaluationStress(int threads, int count) {
+		this.threads = threads;
+		this.count = count;
+	}
+
+	private static void check(boolean ok, String what) {
+		if (!ok) {
+			throw new AssertionError(what);
+		}
+	}
+
+	/**
+	 * Builds symbol tables for an expression, each compiled against like the first and
+	 * loaded with random values; arrays are left dense or sparse by ArrayValues.allocate
+	 * depending on how many items are set
+	 */
+	private List<SymbolTable> makeTables(String expr, Random random) {
+		List<SymbolTable> tables = new ArrayList<SymbolTable>(count);
+		for (int t = 0; t < count; t++) {
+			SymbolTable table = new SymbolTable();
+			CompiledExpression.compile(expr, table);
+			for (int slot = 0; slot < table.variables().size(); slot++) {
+				table.setValue(slot, random.nextInt(SIZE));
+			}
+			for (int slot = 0; slot < table.arrays().size(); slot++) {
+				int populated = 1 + random.nextInt(SIZE);
+				table.allocateArray(slot, SIZE, populated);
+				for (int i = 0; i < populated; i++) {
+					table.setItem(slot, random.nextInt(SIZE), random.nextInt(SIZE));
+				}
+			}
+			tables.add(table);
+		}
+		return tables;
+	}
+
+	/**
+	 * Checks results against the expected ones, as bits so that NaNs compare equal
+	 */
+	private static void compare(float[] expected, float[] actual, String expr, String how) {
+		check(actual.length == expected.length, how + " gave " + actual.length + " results for " + expr);
+		for (int i = 0; i < expected.length; i++) {
+			check(Float.floatToIntBits(expected[i]) == Float.floatToIntBits(actual[i]),
+					how + " gave " + actual[i] + " instead of " + expected[i] + " for table " + i + " of " + expr);
+		}
+	}
+
+	/**
+	 * Evaluates an expression against every table on each of the threads at once, in a
+	 * different order on each, and checks every result
+	 */
+	private void evaluateOnThreads(final CompiledExpression e, final List<SymbolTable> tables,
+			final float[] expected, final boolean ownScratch) throws Exception {
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int offset = (int) ((long) tables.size() * t / threads);
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						CompiledExpression.Scratch s = e.newScratch();
+						for (int round = 0; round < ROUNDS && failure.get() == null; round++) {
+							for (int k = 0; k < tables.size(); k++) {
+								int i = (offset + k) % tables.size();
+								float result = ownScratch ? e.evaluate(tables.get(i), s) : e.evaluate(tables.get(i));
+								check(Float.floatToIntBits(result) == Float.floatToIntBits(expected[i]),
+										(ownScratch ? "evaluate with a Scratch" : "evaluate") + " gave " + result
+										+ " instead of " + expected[i] + " for table " + i + " of " + e);
+							}
+						}
+					} catch (Throwable x) {
+						failure.compareAndSet(null, x);
+					}
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		if (failure.get() != null) {
+			throw new Exception("Wrong result on " + threads + " threads", failure.get());
+		}
+	}
+
+	/**
+	 * Checks one expression every way
+	 */
+	private void run(String expr, Random random, ForkJoinPool pool, ExecutorService fixed)
+	throws Exception {
+		List<SymbolTable> tables = makeTables(expr, random);
+		CompiledExpression plain = CompiledExpression.compile(expr, tables.get(0));
+		float[] expected = new float[tables.size()];
+		for (int i = 0; i < tables.size(); i++) {
+			expected[i] = plain.evaluate(tables.get(i));
+		}
+		CompiledExpression optimized = plain.optimize();
+		long start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			compare(expected, optimized.evaluateAll(tables, pool), expr, "evaluateAll in a fork-join pool");
+			compare(expected, optimized.evaluateAll(tables, fixed), expr, "evaluateAll in a thread pool");
+		}
+		evaluateOnThreads(optimized, tables, expected, true);
+		evaluateOnThreads(optimized, tables, expected, false);
+		System.out.printf("%s: %d tables, %d ms%n", expr, tables.size(), (System.nanoTime() - start) / 1000000);
+	}
+
+	public static void main(String[] args)
+	throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0])
+				: Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		ConcurrentEvaluationStress stress = new ConcurrentEvaluationStress(threads, count);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		ExecutorService fixed = Executors.newFixedThreadPool(threads);
+		boolean passed = false;
+		try {
+			Random random = new Random(count);
+			for (String expr : EXPRESSIONS) {
+				stress.run(expr, random, pool, fixed);
+			}
+			passed = true;
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			pool.shutdown();
+			fixed.shutdown();
+		}
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+package app;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the results of a family of expressions compiled against one symbol table.
+ * Each result is stamped with the table's change counter when it is computed, and is
+ * reused for as long as none of the variables and arrays the expression uses - the ones
+ * makeVariableLists would find in it - has changed since. After an update, only the
+ * expressions that use an updated symbol are evaluated again. The cache holds at most a
+ * given number of results, evicting the least recently used one when full.
+ *
+ */
+public final class ExpressionCache {
+
+	/**
+	 * A cached result
+	 */
+	private static final class Entry {
+		float value;
+
+		/**
+		 * Table change counter when the value was computed
+		 */
+		long version;
+	}
+
+	private final SymbolTable table;
+	private final int capacity;
+
+	/**
+	 * Cached results, in access order, keyed by expression identity
+	 */
+	private final LinkedHashMap<CompiledExpression,Entry> entries;
+
+	private long hits, misses, evictions;
+
+	/**
+	 * Initializes an empty cache
+	 *
+	 * @param table Symbol table the cached expressions are compiled against
+	 * @param capacity Maximum number of results held
+	 */
+	public ExpressionCache(SymbolTable table, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.table = table;
+		this.capacity = capacity;
+		entries = new LinkedHashMap<CompiledExpression,Entry>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<CompiledExpression,Entry> eldest) {
+				if (size() > ExpressionCache.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the value of an expression, evaluating it only if it is not cached or if a
+	 * symbol it uses has changed since it was cached
+	 *
+	 * @param expr Expression compiled against this cache's symbol table
+	 * @return Result of evaluation
+	 */
+	public synchronized float evaluate(CompiledExpression expr) {
+		Entry e = entries.get(expr);
+		if (e != null && current(expr, e.version)) {
+			hits++;
+			return e.value;
+		}
+		misses++;
+		long version = table.version();
+		float value = expr.evaluate(table);
+		if (e == null) {
+			e = new Entry();
+			entries.put(expr, e);
+		}
+		e.version = version;
+		e.value = value;
+		return value;
+	}
+
+	/**
+	 * Whether none of the symbols an expression uses has changed since a given version
+	 */
+	private boolean current(CompiledExpression expr, long version) {
+		for (int slot : expr.variableSlots()) {
+			if (table.variableVersion(slot) > version) {
+				return false;
+			}
+		}
+		for (int slot : expr.arraySlots()) {
+			if (table.arrayVersion(slot) > version) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all cached results. Counters are not reset.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of results held
+	 *
+	 * @return Number of cached results
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of evaluations answered from the cache
+	 *
+	 * @return Hit count
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of evaluations that had to be computed
+	 *
+	 * @return Miss count
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of results evicted to stay within capacity
+	 *
+	 * @return Eviction count
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	public synchronized String toString() {
+		return "ExpressionCache[" + entries.size() + "/" + capacity + ", hits=" + hits
+				+ ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+}
\ No newline at end of file
@@ -8,7 +8,7 @@ import structures.Stack;
 
 public class Expression {
 
-	public static String delims = " \t*+-/()[]";
+	public static final String delims = " \t*+-/()[]";
 			
     /**
      * Populates the vars list with simple variables, and arrays lists with arrays
@@ -23,6 +23,18 @@ public class Expression {
      */
     public static void 
     makeVariableLists(String expr, ArrayList<Variable> vars, ArrayList<Array> arrays) {
+    	makeVariableLists(expr, SymbolTable.wrap(vars, arrays));
+    }
+
+    /**
+     * Adds the simple variables and arrays in the expression to a symbol table, which may
+     * be shared with other expressions. Symbols already in the table are not added again.
+     * 
+     * @param expr The expression
+     * @param table The symbol table
+     */
+    public static void 
+    makeVariableLists(String expr, SymbolTable table) {
     	String varName = "";
     	for(int i = 0; i < expr.length(); i++) 
     	{
@@ -32,37 +44,16 @@ public class Expression {
     		}
     		else if(expr.charAt(i) == '[') 
     		{
-    			boolean acontained = false;
-    			for(int j = 0; j < arrays.size(); j++)
-    	    	{
-    	    		if(arrays.get(j).name.equals(varName))
-    	    			acontained = true;
-    	    	}
-    			if(!acontained)
-    				arrays.add(new Array(varName));
+    			table.addArray(varName);
     			varName = "";
     		}
     		else if(varName != "")
     		{
-    			boolean contained = false;
-    			for(int j = 0; j < vars.size(); j++)
-    	    	{
-    	    		if(vars.get(j).name.equals(varName))
-    	    			contained = true;
-    	    	}
-    			if(!contained)
-    				vars.add(new Variable(varName));
+    			table.addVariable(varName);
     			varName = "";
     		}
     		if(i == expr.length() -1 && varName != "") {
-    			boolean contained = false;
-    			for(int j = 0; j < vars.size(); j++)
-    	    	{
-    	    		if(vars.get(j).name.equals(varName))
-    	    			contained = true;
-    	    	}
-    			if(!contained)
-    				vars.add(new Variable(varName));
+    			table.addVariable(varName);
     			varName = "";
     		}
     	}
@@ -78,31 +69,42 @@ public class Expression {
      */
     public static void 
     loadVariableValues(Scanner sc, ArrayList<Variable> vars, ArrayList<Array> arrays) 
+    throws IOException {
+    	loadVariableValues(sc, SymbolTable.wrap(vars, arrays));
+    }
+
+    /**
+     * Loads values for the variables and arrays in a symbol table. Names in the input
+     * that are not in the table are skipped.
+     * 
+     * @param sc Scanner for values input
+     * @param table The symbol table, previously populated by makeVariableLists
+     * @throws IOException If there is a problem with the input 
+     */
+    public static void 
+    loadVariableValues(Scanner sc, SymbolTable table) 
     throws IOException {
         while (sc.hasNextLine()) {
             StringTokenizer st = new StringTokenizer(sc.nextLine().trim());
             int numTokens = st.countTokens();
             String tok = st.nextToken();
-            Variable var = new Variable(tok);
-            Array arr = new Array(tok);
-            int vari = vars.indexOf(var);
-            int arri = arrays.indexOf(arr);
+            int vari = table.variableSlot(tok);
+            int arri = table.arraySlot(tok);
             if (vari == -1 && arri == -1) {
             	continue;
             }
             int num = Integer.parseInt(st.nextToken());
             if (numTokens == 2) { // scalar symbol
-                vars.get(vari).value = num;
+                table.setValue(vari, num);
             } else { // array symbol
-            	arr = arrays.get(arri);
-            	arr.values = new int[num];
+            	ArrayValues values = table.allocateArray(arri, num, numTokens - 2);
                 // following are (index,val) pairs
                 while (st.hasMoreTokens()) {
                     tok = st.nextToken();
                     StringTokenizer stt = new StringTokenizer(tok," (,)");
                     int index = Integer.parseInt(stt.nextToken());
                     int val = Integer.parseInt(stt.nextToken());
-                    arr.values[index] = val;              
+                    values.set(index, val);              
                 }
             }
         }
@@ -118,14 +120,43 @@ public class Expression {
      */
     public static float 
     evaluate(String expr, ArrayList<Variable> vars, ArrayList<Array> arrays) {
+    	SymbolTable table = SymbolTable.wrap(vars, arrays);
     	expr = expr.replace(" ", "");
-    	expr = replaceVars(expr, vars);
-    	expr = replaceArrays(expr, arrays);
+    	expr = replaceVars(expr, table);
+    	expr = replaceArrays(expr, table);
     	expr = evaluateP(expr);
     	return Float.parseFloat(expr);
     }
-    
-private static String replaceVars(String expr, ArrayList<Variable> vars) {
+
+    /**
+     * Parses the expression once, for repeated evaluation with different variable values.
+     * The compiled form binds variables and arrays by their position in the lists built
+     * by makeVariableLists.
+     *
+     * @param expr The expression
+     * @return Compiled expression
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public static CompiledExpression
+    compile(String expr) {
+    	return CompiledExpression.compile(expr);
+    }
+
+    /**
+     * Parses the expression once, binding its variables and arrays to the slots of a
+     * symbol table. Names not yet in the table are added to it.
+     *
+     * @param expr The expression
+     * @param table The symbol table
+     * @return Compiled expression
+     * @throws IllegalArgumentException If the expression is malformed
+     */
+    public static CompiledExpression
+    compile(String expr, SymbolTable table) {
+    	return CompiledExpression.compile(expr, table);
+    }
+
+private static String replaceVars(String expr, SymbolTable table) {
 	String varName = "";
 	for(int i = 0; i < expr.length(); i++) 
 	{
@@ -139,26 +170,16 @@ private static String replaceVars(String expr, ArrayList<Variable> vars) {
 		}
 		else if(varName != "")
 		{
-			float varVal = 0;
-			for(int j = 0; j < vars.size(); j++)
-			{
-				if(vars.get(j).name.equals(varName))
-				{
-					varVal = vars.get(j).value;
-				}	
-			}
+			Variable var = table.variable(varName);
+			float varVal = var == null ? 0 : var.value;
 			int digitCount = (varVal + "").length();
 			expr = expr.substring(0,i - varName.length()) + varVal + expr.substring(i);
 			i -= varName.length() - digitCount + 1;
 			varName = "";
 		}
 		if(i == expr.length() -1 && varName != "") {
-			float varVal = 0;
-			for(int j = 0; j < vars.size(); j++)
-			{
-				if(vars.get(j).name.equals(varName))
-					varVal = vars.get(j).value;
-			}
+			Variable var = table.variable(varName);
+			float varVal = var == null ? 0 : var.value;
 			expr = expr.substring(0,i - varName.length() + 1) + varVal;
 			return expr;
 		}	
@@ -169,10 +190,10 @@ private static String replaceVars(String expr, ArrayList<Variable> vars) {
 
 /**
  * @param expr
- * @param arrays
+ * @param table
  * @return
  */
-private static String replaceArrays(String expr, ArrayList<Array> arrays) {
+private static String replaceArrays(String expr, SymbolTable table) {
 
 	if(expr.indexOf('[') == -1 || expr == "") 
 	{
@@ -211,14 +232,9 @@ private static String replaceArrays(String expr, ArrayList<Array> arrays) {
 		}
 		if(startbIndex != -1 && endIndex != -1)
 		{
-			String inner = replaceArrays(expr.substring(startbIndex + 1, endIndex), arrays);
-			int[] array = new int[69];
-			for(int j = 0; j < arrays.size(); j++)
-			{
-				if(arrays.get(j).name.equals(varName))
-					array = arrays.get(j).values;
-			}
-			expr = expr.substring(0, startIndex) + array[Math.round(Float.parseFloat(inner))] + expr.substring(endIndex + 1);
+			String inner = replaceArrays(expr.substring(startbIndex + 1, endIndex), table);
+			int item = table.item(table.arraySlot(varName), Math.round(Float.parseFloat(inner)));
+			expr = expr.substring(0, startIndex) + item + expr.substring(endIndex + 1);
 			varName = "";
 			i = -1;
 			startbIndex = -1;
@@ -227,7 +243,7 @@ private static String replaceArrays(String expr, ArrayList<Array> arrays) {
 			bcount = 1;
 		}
 	}
-	expr = replaceArrays(expr, arrays);
+	expr = replaceArrays(expr, table);
 	return expr;
 }
 
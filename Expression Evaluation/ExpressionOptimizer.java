@@ -0,0 +1,227 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import app.CompiledExpression.Binary;
+import app.CompiledExpression.Const;
+import app.CompiledExpression.Item;
+import app.CompiledExpression.Neg;
+import app.CompiledExpression.Node;
+import app.CompiledExpression.Temp;
+import app.CompiledExpression.Var;
+
+/**
+ * Optimization pass over the operator tree of a compiled expression. Only rewrites that
+ * give bit for bit the same float result are made: constants are folded with the same
+ * float operations the evaluator would perform, and x+0 is left alone because -0+0 is +0.
+ *
+ */
+final class ExpressionOptimizer {
+
+	/**
+	 * Canonical instance of each distinct node, so identical subtrees become one node
+	 */
+	private final HashMap<Node,Node> canon = new HashMap<Node,Node>();
+
+	/**
+	 * Number of references to each node of the deduplicated tree
+	 */
+	private final IdentityHashMap<Node,Integer> refs = new IdentityHashMap<Node,Integer>();
+
+	/**
+	 * Temp index of each shared node
+	 */
+	private final IdentityHashMap<Node,Integer> tempOf = new IdentityHashMap<Node,Integer>();
+
+	/**
+	 * Shared nodes, children before parents
+	 */
+	private final ArrayList<Node> sharedNodes = new ArrayList<Node>();
+
+	private final IdentityHashMap<Node,Node> visited = new IdentityHashMap<Node,Node>();
+
+	private ExpressionOptimizer() {
+	}
+
+	/**
+	 * Returns an optimized copy of a compiled expression
+	 *
+	 * @param expr Compiled expression
+	 * @return Optimized expression
+	 */
+	static CompiledExpression optimize(CompiledExpression expr) {
+		ExpressionOptimizer opt = new ExpressionOptimizer();
+		Node root = opt.simplify(expr.root());
+		opt.count(root);
+		opt.findShared(root);
+		Node[] shared = new Node[opt.sharedNodes.size()];
+		int after = 0;
+		for (int i = 0; i < shared.length; i++) {
+			shared[i] = opt.rewrite(opt.sharedNodes.get(i), true);
+			after += size(shared[i]);
+		}
+		root = opt.rewrite(root, true);
+		after += size(root);
+		return new CompiledExpression(expr, root, shared, size(expr.root()) - after);
+	}
+
+	/**
+	 * Folds constants and identities bottom up, returning the canonical instance of the
+	 * simplified node
+	 */
+	private Node simplify(Node n) {
+		if (n instanceof Item) {
+			Item it = (Item) n;
+			n = new Item(it.slot, simplify(it.index));
+		} else if (n instanceof Neg) {
+			Node x = simplify(((Neg) n).operand);
+			if (x instanceof Const) {
+				n = new Const(-((Const) x).value);
+			} else if (x instanceof Neg) {
+				n = ((Neg) x).operand;
+			} else {
+				n = new Neg(x);
+			}
+		} else if (n instanceof Binary) {
+			Binary b = (Binary) n;
+			n = simplify(b.op, simplify(b.left), simplify(b.right));
+		}
+		Node c = canon.get(n);
+		if (c == null) {
+			canon.put(n, n);
+			c = n;
+		}
+		return c;
+	}
+
+	private Node simplify(char op, Node l, Node r) {
+		if (l instanceof Const && r instanceof Const) {
+			float a = ((Const) l).value, b = ((Const) r).value;
+			switch (op) {
+			case '+': return new Const(a + b);
+			case '-': return new Const(a - b);
+			case '*': return new Const(a * b);
+			default: return new Const(a / b);
+			}
+		}
+		switch (op) {
+		case '+':
+			if (r instanceof Neg) { // x + -y = x - y
+				return canonical(new Binary('-', l, ((Neg) r).operand));
+			}
+			break;
+		case '-':
+			if (is(r, 0f)) {
+				return l;
+			}
+			if (r instanceof Neg) { // x - -y = x + y
+				return canonical(new Binary('+', l, ((Neg) r).operand));
+			}
+			break;
+		case '*':
+			if (is(l, 1f)) {
+				return r;
+			}
+			break;
+		}
+		if (op == '*' || op == '/') {
+			if (is(r, 1f)) {
+				return l;
+			}
+			if (l instanceof Neg && r instanceof Neg) { // -x * -y = x * y
+				return canonical(new Binary(op, ((Neg) l).operand, ((Neg) r).operand));
+			}
+		}
+		return new Binary(op, l, r);
+	}
+
+	private Node canonical(Node n) {
+		Node c = canon.get(n);
+		if (c == null) {
+			canon.put(n, n);
+			c = n;
+		}
+		return c;
+	}
+
+	/**
+	 * Whether a node is the constant v, compared bit for bit so 0 does not match -0
+	 */
+	private static boolean is(Node n, float v) {
+		return n instanceof Const && Float.floatToIntBits(((Const) n).value) == Float.floatToIntBits(v);
+	}
+
+	private void count(Node n) {
+		Integer c = refs.get(n);
+		refs.put(n, c == null ? 1 : c + 1);
+		if (c != null) {
+			return;
+		}
+		for (Node child : children(n)) {
+			count(child);
+		}
+	}
+
+	/**
+	 * Assigns temps to the operator nodes referenced more than once, in post order
+	 */
+	private void findShared(Node n) {
+		if (visited.put(n, n) != null) {
+			return;
+		}
+		for (Node child : children(n)) {
+			findShared(child);
+		}
+		if (refs.get(n) > 1 && !(n instanceof Const) && !(n instanceof Var)) {
+			tempOf.put(n, sharedNodes.size());
+			sharedNodes.add(n);
+		}
+	}
+
+	/**
+	 * Rebuilds a node with references to shared nodes replaced by temps
+	 */
+	private Node rewrite(Node n, boolean top) {
+		Integer temp = tempOf.get(n);
+		if (temp != null && !top) {
+			return new Temp(temp);
+		}
+		if (n instanceof Item) {
+			return new Item(((Item) n).slot, rewrite(((Item) n).index, false));
+		}
+		if (n instanceof Neg) {
+			return new Neg(rewrite(((Neg) n).operand, false));
+		}
+		if (n instanceof Binary) {
+			Binary b = (Binary) n;
+			return new Binary(b.op, rewrite(b.left, false), rewrite(b.right, false));
+		}
+		return n;
+	}
+
+	private static Node[] children(Node n) {
+		if (n instanceof Item) {
+			return new Node[] { ((Item) n).index };
+		}
+		if (n instanceof Neg) {
+			return new Node[] { ((Neg) n).operand };
+		}
+		if (n instanceof Binary) {
+			return new Node[] { ((Binary) n).left, ((Binary) n).right };
+		}
+		return new Node[0];
+	}
+
+	/**
+	 * Number of nodes in a tree, counting shared subtrees once per reference
+	 */
+	private static int size(Node n) {
+		int size = 1;
+		for (Node child : children(n)) {
+			size += size(child);
+		}
+		return size;
+	}
+}
\ No newline at end of file
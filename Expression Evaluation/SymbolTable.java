@@ -0,0 +1,398 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Symbol table of simple variables and arrays. Each name is held once, by its Variable or
+ * Array object, and is mapped through a hash table to its slot - its position in the
+ * variables or arrays list - so lookups take constant time however many symbols there are.
+ * A single table can be shared by all the expressions that read the same variable file:
+ * expressions compiled against it bind directly to its slots.
+ * 
+ * Array items are kept in Array.values when the array is dense. Sparse arrays, and arrays
+ * too large for the heap, are kept in an ArrayValues backing instead, with Array.values
+ * set to null.
+ * 
+ * Every symbol carries a version, taken from a counter that advances on each change, so
+ * that ExpressionCache can tell which expressions are affected by an update. Changes made
+ * through setValue, setItem and the loaders are recorded automatically; a caller that
+ * writes Variable.value or Array.values directly must call touchVariable or touchArray.
+ * 
+ * Any number of threads may look up and evaluate against a table at once, as long as no
+ * thread is changing it.
+ *
+ */
+public final class SymbolTable {
+
+	/**
+	 * Simple variables, indexed by slot
+	 */
+	final ArrayList<Variable> vars;
+
+	/**
+	 * Arrays, indexed by slot
+	 */
+	final ArrayList<Array> arrays;
+
+	/**
+	 * Slot of each simple variable name, built on first use
+	 */
+	private HashMap<String,Integer> varSlots;
+
+	/**
+	 * Slot of each array name, built on first use
+	 */
+	private HashMap<String,Integer> arraySlots;
+
+	/**
+	 * Backing of each array slot whose items are not in Array.values, null for the others
+	 */
+	private ArrayValues[] backings = new ArrayValues[0];
+
+	/**
+	 * Whether arrays are always stored densely in Array.values, for callers that read
+	 * the arrays list directly
+	 */
+	private final boolean denseOnly;
+
+	/**
+	 * Counter advanced on every change to a symbol
+	 */
+	private long clock;
+
+	/**
+	 * Value of the clock at the last change to each variable and array
+	 */
+	private long[] varVersions = new long[0];
+	private long[] arrayVersions = new long[0];
+
+	/**
+	 * Initializes an empty symbol table
+	 */
+	public SymbolTable() {
+		this(new ArrayList<Variable>(), new ArrayList<Array>());
+	}
+
+	/**
+	 * Initializes a symbol table over existing variables and arrays lists. The lists are
+	 * not copied: symbols added to the table are appended to them, and they must not be
+	 * changed other than through the table while it is in use.
+	 *
+	 * @param vars The variables array list
+	 * @param arrays The arrays array list
+	 */
+	public SymbolTable(ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		this(vars, arrays, false);
+		index();
+	}
+
+	private SymbolTable(ArrayList<Variable> vars, ArrayList<Array> arrays, boolean denseOnly) {
+		this.vars = vars;
+		this.arrays = arrays;
+		this.denseOnly = denseOnly;
+	}
+
+	/**
+	 * Returns a table over lists that are read directly by the caller, so arrays are
+	 * always stored in Array.values. The name index is built on first use, as these
+	 * tables are often made for a single evaluation and never looked up by name; they
+	 * must not be shared between threads.
+	 */
+	static SymbolTable wrap(ArrayList<Variable> vars, ArrayList<Array> arrays) {
+		return new SymbolTable(vars, arrays, true);
+	}
+
+	private void index() {
+		if (varSlots != null) {
+			return;
+		}
+		varSlots = new HashMap<String,Integer>(Math.max(16, vars.size() * 2));
+		arraySlots = new HashMap<String,Integer>(Math.max(16, arrays.size() * 2));
+		for (int i = 0; i < vars.size(); i++) {
+			varSlots.putIfAbsent(vars.get(i).name, i);
+		}
+		for (int i = 0; i < arrays.size(); i++) {
+			arraySlots.putIfAbsent(arrays.get(i).name, i);
+		}
+	}
+
+	/**
+	 * Returns the slot of a simple variable, adding the variable (with value zero) if it
+	 * is not already in the table
+	 *
+	 * @param name Variable name
+	 * @return Slot of the variable
+	 */
+	public int addVariable(String name) {
+		index();
+		Integer slot = varSlots.get(name);
+		if (slot != null) {
+			return slot;
+		}
+		vars.add(new Variable(name));
+		varSlots.put(name, vars.size() - 1);
+		return vars.size() - 1;
+	}
+
+	/**
+	 * Returns the slot of an array, adding the array (with no values) if it is not
+	 * already in the table
+	 *
+	 * @param name Array name
+	 * @return Slot of the array
+	 */
+	public int addArray(String name) {
+		index();
+		Integer slot = arraySlots.get(name);
+		if (slot != null) {
+			return slot;
+		}
+		arrays.add(new Array(name));
+		arraySlots.put(name, arrays.size() - 1);
+		return arrays.size() - 1;
+	}
+
+	/**
+	 * Returns the slot of a simple variable
+	 *
+	 * @param name Variable name
+	 * @return Slot of the variable, -1 if there is no such variable
+	 */
+	public int variableSlot(String name) {
+		index();
+		Integer slot = varSlots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Returns the slot of an array
+	 *
+	 * @param name Array name
+	 * @return Slot of the array, -1 if there is no such array
+	 */
+	public int arraySlot(String name) {
+		index();
+		Integer slot = arraySlots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Returns the simple variable in a slot
+	 *
+	 * @param slot Slot of the variable
+	 * @return Variable
+	 */
+	public Variable variable(int slot) {
+		return vars.get(slot);
+	}
+
+	/**
+	 * Returns the array in a slot
+	 *
+	 * @param slot Slot of the array
+	 * @return Array
+	 */
+	public Array array(int slot) {
+		return arrays.get(slot);
+	}
+
+	/**
+	 * Returns the simple variable with a given name
+	 *
+	 * @param name Variable name
+	 * @return Variable, null if there is no such variable
+	 */
+	public Variable variable(String name) {
+		index();
+		Integer slot = varSlots.get(name);
+		return slot == null ? null : vars.get(slot);
+	}
+
+	/**
+	 * Returns the array with a given name
+	 *
+	 * @param name Array name
+	 * @return Array, null if there is no such array
+	 */
+	public Array array(String name) {
+		index();
+		Integer slot = arraySlots.get(name);
+		return slot == null ? null : arrays.get(slot);
+	}
+
+	/**
+	 * Allocates storage for the items of an array, all zero. The backing is picked by
+	 * ArrayValues.allocate from the declared size and the number of items to be set; a
+	 * dense array is stored in Array.values, reusing the existing values array if it
+	 * has the same size.
+	 *
+	 * @param slot Slot of the array
+	 * @param length Declared size of the array
+	 * @param populated Number of items that will be set
+	 * @return Storage for the items, to be filled by the caller
+	 */
+	public ArrayValues allocateArray(int slot, int length, int populated) {
+		Array arr = arrays.get(slot);
+		ArrayValues values;
+		if (arr.values != null && arr.values.length == length) {
+			Arrays.fill(arr.values, 0);
+			values = new ArrayValues.Dense(arr.values);
+		} else if (denseOnly) {
+			values = new ArrayValues.Dense(new int[length]);
+		} else {
+			values = ArrayValues.allocate(length, populated);
+		}
+		if (values instanceof ArrayValues.Dense) {
+			arr.values = ((ArrayValues.Dense) values).values;
+			setBacking(slot, null);
+		} else {
+			arr.values = null;
+			setBacking(slot, values);
+		}
+		touchArray(slot);
+		return values;
+	}
+
+	/**
+	 * Sets the value of a simple variable
+	 *
+	 * @param slot Slot of the variable
+	 * @param value New value
+	 */
+	public void setValue(int slot, int value) {
+		vars.get(slot).value = value;
+		touchVariable(slot);
+	}
+
+	/**
+	 * Sets an array item, whatever the backing of the array
+	 *
+	 * @param slot Slot of the array
+	 * @param index Index of the item
+	 * @param value New value
+	 */
+	public void setItem(int slot, int index, int value) {
+		ArrayValues b = backing(slot);
+		if (b != null) {
+			b.set(index, value);
+		} else {
+			arrays.get(slot).values[index] = value;
+		}
+		touchArray(slot);
+	}
+
+	/**
+	 * Records a change to a simple variable made directly to its Variable object
+	 *
+	 * @param slot Slot of the variable
+	 */
+	public void touchVariable(int slot) {
+		if (slot >= varVersions.length) {
+			varVersions = Arrays.copyOf(varVersions, Math.max(slot + 1, vars.size()));
+		}
+		varVersions[slot] = ++clock;
+	}
+
+	/**
+	 * Records a change to an array made directly to its Array object
+	 *
+	 * @param slot Slot of the array
+	 */
+	public void touchArray(int slot) {
+		if (slot >= arrayVersions.length) {
+			arrayVersions = Arrays.copyOf(arrayVersions, Math.max(slot + 1, arrays.size()));
+		}
+		arrayVersions[slot] = ++clock;
+	}
+
+	/**
+	 * Returns the current value of the change counter
+	 */
+	long version() {
+		return clock;
+	}
+
+	/**
+	 * Returns the value of the change counter at the last change to a variable
+	 */
+	long variableVersion(int slot) {
+		return slot < varVersions.length ? varVersions[slot] : 0;
+	}
+
+	/**
+	 * Returns the value of the change counter at the last change to an array
+	 */
+	long arrayVersion(int slot) {
+		return slot < arrayVersions.length ? arrayVersions[slot] : 0;
+	}
+
+	/**
+	 * Returns the items of an array
+	 *
+	 * @param slot Slot of the array
+	 * @return Array items, null if no values have been loaded for the array
+	 */
+	public ArrayValues values(int slot) {
+		ArrayValues b = backing(slot);
+		if (b != null) {
+			return b;
+		}
+		int[] values = arrays.get(slot).values;
+		return values == null ? null : new ArrayValues.Dense(values);
+	}
+
+	/**
+	 * Returns an array item, whatever the backing of the array
+	 *
+	 * @param slot Slot of the array, -1 for an unknown array whose items are all zero
+	 * @param index Index of the item
+	 * @return Value of the item
+	 */
+	int item(int slot, int index) {
+		if (slot == -1) {
+			return 0;
+		}
+		ArrayValues b = backing(slot);
+		return b != null ? b.get(index) : arrays.get(slot).values[index];
+	}
+
+	/**
+	 * Returns the backing of an array that is not stored in Array.values
+	 *
+	 * @param slot Slot of the array
+	 * @return Backing, null if the items are in Array.values
+	 */
+	ArrayValues backing(int slot) {
+		return slot < backings.length ? backings[slot] : null;
+	}
+
+	private void setBacking(int slot, ArrayValues values) {
+		if (slot >= backings.length) {
+			if (values == null) {
+				return;
+			}
+			backings = Arrays.copyOf(backings, Math.max(slot + 1, backings.length * 2));
+		}
+		backings[slot] = values;
+	}
+
+	/**
+	 * Returns the variables list, indexed by slot
+	 *
+	 * @return Variables array list
+	 */
+	public ArrayList<Variable> variables() {
+		return vars;
+	}
+
+	/**
+	 * Returns the arrays list, indexed by slot
+	 *
+	 * @return Arrays array list
+	 */
+	public ArrayList<Array> arrays() {
+		return arrays;
+	}
+}
\ No newline at end of file
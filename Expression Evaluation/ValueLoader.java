@@ -0,0 +1,280 @@
+package app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Loads variable and array values in the format read by Expression.loadVariableValues:
+ * <pre>
+ *     name value
+ *     name size (index,value) (index,value) ...
+ * </pre>
+ * Input is read through a single reusable buffer and numbers are parsed directly from
+ * the bytes, so the only allocation per line is the symbol name and, for arrays, the
+ * item storage when it cannot be reused. Array storage is picked by the symbol table
+ * from the declared size and the number of items on the line. A loader may be reused
+ * for any number of loads, but not by several threads at once.
+ *
+ */
+public final class ValueLoader {
+
+	/**
+	 * Size of the read buffer in bytes
+	 */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Throughput figures for one load
+	 */
+	public static final class Stats {
+		/**
+		 * Bytes read
+		 */
+		public long bytes;
+
+		/**
+		 * Non-blank lines read, including those for symbols that are not in the table
+		 */
+		public long lines;
+
+		/**
+		 * Simple variable values and array items stored
+		 */
+		public long values;
+
+		/**
+		 * Elapsed time in nanoseconds
+		 */
+		public long nanos;
+
+		/**
+		 * Returns the load rate
+		 *
+		 * @return Megabytes read per second
+		 */
+		public double megabytesPerSecond() {
+			return nanos == 0 ? 0 : (bytes / 1e6) / (nanos / 1e9);
+		}
+
+		public String toString() {
+			return String.format("%d bytes, %d lines, %d values in %.3f ms (%.1f MB/s)",
+					bytes, lines, values, nanos / 1e6, megabytesPerSecond());
+		}
+	}
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private final byte[] bytes = buffer.array();
+	private ReadableByteChannel channel;
+	private int pos, limit;
+
+	/**
+	 * Number of the line being read, for error messages
+	 */
+	private long line;
+	private Stats stats;
+	private char[] name = new char[32];
+
+	/**
+	 * Index/value pairs of the array line being read
+	 */
+	private int[] items = new int[256];
+
+	/**
+	 * Loads values from a file into the variables and arrays of a symbol table. Names in
+	 * the file that are not in the table are skipped.
+	 *
+	 * @param file Name of the values file
+	 * @param table The symbol table, previously populated by makeVariableLists
+	 * @return Throughput figures for the load
+	 * @throws IOException If there is a problem reading the file, or it is malformed
+	 */
+	public Stats load(String file, SymbolTable table)
+	throws IOException {
+		FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+		try {
+			return load(ch, table);
+		} finally {
+			ch.close();
+		}
+	}
+
+	/**
+	 * Loads values from a channel into the variables and arrays of a symbol table. Names
+	 * in the input that are not in the table are skipped.
+	 *
+	 * @param ch Channel from which values are read - not closed by this method
+	 * @param table The symbol table, previously populated by makeVariableLists
+	 * @return Throughput figures for the load
+	 * @throws IOException If there is a problem reading the input, or it is malformed
+	 */
+	public Stats load(ReadableByteChannel ch, SymbolTable table)
+	throws IOException {
+		channel = ch;
+		pos = limit = 0;
+		line = 1;
+		stats = new Stats();
+		long start = System.nanoTime();
+		try {
+			int c = next();
+			while (c != -1) {
+				c = skipBlanks(c);
+				if (c == '\n') {
+					line++;
+					c = next();
+					continue;
+				}
+				if (c == -1) {
+					break;
+				}
+				stats.lines++;
+				c = loadLine(c, table);
+			}
+		} finally {
+			channel = null;
+		}
+		stats.nanos = System.nanoTime() - start;
+		return stats;
+	}
+
+	/**
+	 * Loads one non-blank line, starting at its first byte c
+	 *
+	 * @return First byte after the end of the line
+	 */
+	private int loadLine(int c, SymbolTable table)
+	throws IOException {
+		int len = 0;
+		while (c != -1 && !isSpace(c) && c != '\n') {
+			if (len == name.length) {
+				name = Arrays.copyOf(name, len * 2);
+			}
+			name[len++] = (char) c;
+			c = next();
+		}
+		String tok = new String(name, 0, len);
+		int vari = table.variableSlot(tok);
+		int arri = table.arraySlot(tok);
+		if (vari == -1 && arri == -1) {
+			return skipLine(c);
+		}
+		c = skipBlanks(c);
+		int num = parseInt(c);
+		c = next();
+		c = skipBlanks(c);
+		boolean pairs = c != -1 && c != '\n';
+		if (!pairs && vari != -1) { // scalar symbol
+			table.setValue(vari, num);
+			stats.values++;
+			return c;
+		}
+		if (arri == -1) {
+			throw new IOException("Line " + line + ": " + tok + " is not an array");
+		}
+		// following are (index,val) pairs, collected first so the backing
+		// can be picked from the number of items
+		int n = 0;
+		while (pairs) {
+			if (n + 2 > items.length) {
+				items = Arrays.copyOf(items, items.length * 2);
+			}
+			c = skipPairPunct(c);
+			items[n++] = parseInt(c);
+			c = skipPairPunct(next());
+			items[n++] = parseInt(c);
+			c = skipPairPunct(next());
+			pairs = c != -1 && c != '\n';
+		}
+		ArrayValues values = table.allocateArray(arri, num, n / 2);
+		for (int i = 0; i < n; i += 2) {
+			values.set(items[i], items[i + 1]);
+		}
+		stats.values += n / 2;
+		return c;
+	}
+
+	/**
+	 * Parses a decimal integer starting at byte c. On return the last digit has been
+	 * consumed, and the next call to next() returns the byte after it.
+	 *
+	 * @throws IOException If there is no number at c, or it is outside the int range
+	 */
+	private int parseInt(int c)
+	throws IOException {
+		boolean neg = c == '-';
+		if (neg) {
+			c = next();
+		}
+		if (c < '0' || c > '9') {
+			throw new IOException("Line " + line + ": number expected");
+		}
+		long n = c - '0';
+		while (pos < limit || fill()) {
+			c = bytes[pos];
+			if (c < '0' || c > '9') {
+				break;
+			}
+			n = n * 10 + (c - '0');
+			if (n > (neg ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+				throw new IOException("Line " + line + ": number out of int range");
+			}
+			pos++;
+		}
+		return (int) (neg ? -n : n);
+	}
+
+	private int skipBlanks(int c)
+	throws IOException {
+		while (c != -1 && isSpace(c)) {
+			c = next();
+		}
+		return c;
+	}
+
+	private int skipPairPunct(int c)
+	throws IOException {
+		while (c == '(' || c == ',' || c == ')' || (c != -1 && isSpace(c))) {
+			c = next();
+		}
+		return c;
+	}
+
+	private int skipLine(int c)
+	throws IOException {
+		while (c != -1 && c != '\n') {
+			c = next();
+		}
+		return c;
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+	}
+
+	private int next()
+	throws IOException {
+		if (pos == limit && !fill()) {
+			return -1;
+		}
+		return bytes[pos++] & 0xff;
+	}
+
+	private boolean fill()
+	throws IOException {
+		buffer.clear();
+		int n;
+		do {
+			n = channel.read(buffer);
+		} while (n == 0);
+		pos = 0;
+		limit = Math.max(n, 0);
+		if (n > 0) {
+			stats.bytes += n;
+		}
+		return n > 0;
+	}
+}
\ No newline at end of file
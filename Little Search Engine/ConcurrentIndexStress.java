@@ -0,0 +1,312 @@
+package lse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stress check of searches running while documents are added to a LittleSearchEngine.
+ * One thread merges a generated corpus, the first half a document at a time and the
+ * rest in bulk with a finishMerge every few documents, while reader threads search and
+ * check every result against the final frequencies: no more results than asked for, no
+ * document twice, every document holding a keyword, and top5search and getOccurrences in
+ * order. The finished index is then compared with one built by a single thread, and the
+ * search throughput of the finished index is measured for 1, 2, 4... reader threads.
+ *
+ * Usage: java lse.ConcurrentIndexStress [readers [documents]]. Exits with status 1 on
+ * the first wrong result.
+ *
+ */
+public final class ConcurrentIndexStress {
+
+	/**
+	 * Number of documents merged between calls to finishMerge in the bulk half
+	 */
+	static final int BATCH = 50;
+
+	private static final String[] NOISE = { "the", "a", "of", "and", "to", "in" };
+
+	private final int readers;
+	private final String noiseFile;
+	private final List<HashMap<String,Occurrence>> keywords = new ArrayList<HashMap<String,Occurrence>>();
+
+	/**
+	 * Frequency of each keyword in each document, once all are merged
+	 */
+	private final HashMap<String,HashMap<String,Integer>> frequencies = new HashMap<String,HashMap<String,Integer>>();
+	private String[] vocabulary;
+
+	private ConcurrentIndexStress(int readers, File dir, int documents)
+	throws IOException {
+		this.readers = readers;
+		noiseFile = new File(dir, "noise.txt").getPath();
+		PrintWriter out = new PrintWriter(noiseFile);
+		for (String word : NOISE) {
+			out.println(word);
+		}
+		out.close();
+		Random random = new Random(documents);
+		LittleSearchEngine scanner = new LittleSearchEngine();
+		scanner.loadNoiseWords(noiseFile);
+		for (int d = 0; d < documents; d++) {
+			String docFile = new File(dir, "doc" + d + ".txt").getPath();
+			out = new PrintWriter(docFile);
+			for (int w = 5 + random.nextInt(200); w > 0; w--) {
+				// skewed, so that a few keywords have long postings lists
+				int rank = (int) Math.pow(500, random.nextDouble());
+				out.print(random.nextInt(8) == 0 ? NOISE[rank % NOISE.length] : word(rank));
+				out.print(random.nextInt(10) == 0 ? ". " : " ");
+			}
+			out.close();
+			HashMap<String,Occurrence> kws = scanner.loadKeywordsFromDocument(docFile);
+			keywords.add(kws);
+			for (Map.Entry<String,Occurrence> e : kws.entrySet()) {
+				HashMap<String,Integer> byDoc = frequencies.get(e.getKey());
+				if (byDoc == null) {
+					byDoc = new HashMap<String,Integer>();
+					frequencies.put(e.getKey(), byDoc);
+				}
+				byDoc.put(docFile, e.getValue().frequency);
+			}
+		}
+		vocabulary = frequencies.keySet().toArray(new String[frequencies.size()]);
+		Arrays.sort(vocabulary);
+	}
+
+	/**
+	 * Keyword of a rank, in letters only
+	 */
+	private static String word(int rank) {
+		StringBuilder sb = new StringBuilder("w");
+		do {
+			sb.append((char) ('a' + rank % 26));
+			rank /= 26;
+		} while (rank > 0);
+		return sb.toString();
+	}
+
+	/**
+	 * Frequency of a keyword in a document once all are merged, 0 if it does not occur
+	 */
+	private int frequency(String keyword, String docFile) {
+		HashMap<String,Integer> byDoc = frequencies.get(keyword);
+		Integer freq = byDoc == null ? null : byDoc.get(docFile);
+		return freq == null ? 0 : freq;
+	}
+
+	private static void check(boolean ok, String what) {
+		if (!ok) {
+			throw new AssertionError(what);
+		}
+	}
+
+	/**
+	 * Makes one round of searches against an index that may be being added to
+	 */
+	private void searchAndCheck(LittleSearchEngine engine, Random random) {
+		String kw1 = vocabulary[random.nextInt(vocabulary.length)];
+		String kw2 = vocabulary[random.nextInt(vocabulary.length)];
+		ArrayList<String> top = engine.top5search(kw1, kw2);
+		if (top != null) {
+			check(top.size() <= 5 && new HashSet<String>(top).size() == top.size(),
+					"top5search(" + kw1 + ", " + kw2 + ") gave " + top);
+			int previous = Integer.MAX_VALUE;
+			for (String docFile : top) {
+				int freq = Math.max(frequency(kw1, docFile), frequency(kw2, docFile));
+				check(freq > 0 && freq <= previous, "top5search(" + kw1 + ", " + kw2 + ") out of order: " + top);
+				previous = freq;
+			}
+		}
+		ArrayList<Occurrence> occs = engine.getOccurrences(kw1);
+		if (occs != null) {
+			int previous = Integer.MAX_VALUE;
+			for (Occurrence occ : occs) {
+				check(occ.frequency == frequency(kw1, occ.document) && occ.frequency <= previous,
+						"getOccurrences(" + kw1 + ") gave " + occ);
+				previous = occ.frequency;
+			}
+		}
+		List<String> query = Arrays.asList(kw1, kw2, vocabulary[random.nextInt(vocabulary.length)]);
+		int k = 1 + random.nextInt(10);
+		ArrayList<String> found = engine.search(query, random.nextBoolean(), k,
+				Scoring.values()[random.nextInt(Scoring.values().length)]);
+		if (found != null) {
+			check(found.size() <= k && new HashSet<String>(found).size() == found.size(),
+					"search(" + query + ") gave " + found);
+			for (String docFile : found) {
+				check(frequency(query.get(0), docFile) + frequency(query.get(1), docFile)
+						+ frequency(query.get(2), docFile) > 0, "search(" + query + ") found " + docFile);
+			}
+		}
+	}
+
+	/**
+	 * Starts reader threads that search until stopped, counting their searches and keeping
+	 * the first failure
+	 */
+	private Thread[] startReaders(final LittleSearchEngine engine, int n, final AtomicBoolean stop,
+			final AtomicLong searches, final AtomicReference<Throwable> failure) {
+		Thread[] threads = new Thread[n];
+		for (int t = 0; t < n; t++) {
+			final Random random = new Random(t);
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						while (!stop.get()) {
+							searchAndCheck(engine, random);
+							searches.incrementAndGet();
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+						stop.set(true);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		return threads;
+	}
+
+	/**
+	 * Indexes the corpus while readers search it
+	 *
+	 * @return The finished index
+	 */
+	private LittleSearchEngine indexWhileSearching()
+	throws Exception {
+		LittleSearchEngine engine = new LittleSearchEngine();
+		engine.loadNoiseWords(noiseFile);
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicLong searches = new AtomicLong();
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = startReaders(engine, readers, stop, searches, failure);
+		long start = System.nanoTime();
+		int half = keywords.size() / 2;
+		for (int d = 0; d < keywords.size() && !stop.get(); d++) {
+			if (d < half) {
+				engine.mergeKeywords(keywords.get(d));
+			} else {
+				engine.mergeKeywords(keywords.get(d), true);
+				if ((d - half) % BATCH == BATCH - 1) {
+					engine.finishMerge();
+				}
+			}
+		}
+		engine.finishMerge();
+		long nanos = System.nanoTime() - start;
+		stop.set(true);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new Exception("Wrong result while indexing", failure.get());
+		}
+		System.out.printf("indexed %d documents in %d ms, %d checked searches alongside%n", keywords.size(),
+				nanos / 1000000, searches.get());
+		return engine;
+	}
+
+	/**
+	 * Compares the index with one built by a single thread
+	 */
+	private void compareWithSequential(LittleSearchEngine engine)
+	throws Exception {
+		LittleSearchEngine sequential = new LittleSearchEngine();
+		sequential.loadNoiseWords(noiseFile);
+		for (HashMap<String,Occurrence> kws : keywords) {
+			sequential.mergeKeywords(kws, true);
+		}
+		sequential.finishMerge();
+		check(sequential.documents.equals(engine.documents), "documents differ");
+		check(sequential.keywordsIndex.keySet().equals(engine.keywordsIndex.keySet()), "keywords differ");
+		for (Map.Entry<String,PostingsList> e : sequential.keywordsIndex.entrySet()) {
+			check(e.getValue().toString().equals(engine.keywordsIndex.get(e.getKey()).toString()),
+					"postings of " + e.getKey() + " differ");
+		}
+		Random random = new Random(1);
+		for (int q = 0; q < 2000; q++) {
+			List<String> query = Arrays.asList(vocabulary[random.nextInt(vocabulary.length)],
+					vocabulary[random.nextInt(vocabulary.length)]);
+			Scoring scoring = Scoring.values()[q % Scoring.values().length];
+			check(String.valueOf(sequential.search(query, q % 2 == 0, 7, scoring))
+					.equals(String.valueOf(engine.search(query, q % 2 == 0, 7, scoring))),
+					"search(" + query + ", " + scoring + ") differs");
+		}
+		System.out.println("index matches a single-threaded build");
+	}
+
+	/**
+	 * Measures searches per second of a finished index, without the query cache, for
+	 * 1, 2, 4... reader threads
+	 */
+	private void measureThroughput()
+	throws Exception {
+		LittleSearchEngine engine = new LittleSearchEngine(0);
+		engine.loadNoiseWords(noiseFile);
+		for (HashMap<String,Occurrence> kws : keywords) {
+			engine.mergeKeywords(kws, true);
+		}
+		engine.finishMerge();
+		// warms up the compiler
+		searchesInASecond(engine, readers);
+		for (int n = 1; n <= readers; n *= 2) {
+			System.out.printf("%d readers: %d searches/s%n", n, searchesInASecond(engine, n));
+		}
+	}
+
+	/**
+	 * Number of searches n reader threads make in a second
+	 */
+	private long searchesInASecond(LittleSearchEngine engine, int n)
+	throws Exception {
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicLong searches = new AtomicLong();
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = startReaders(engine, n, stop, searches, failure);
+		Thread.sleep(1000);
+		stop.set(true);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new Exception("Wrong result", failure.get());
+		}
+		return searches.get();
+	}
+
+	public static void main(String[] args)
+	throws Exception {
+		int readers = args.length > 0 ? Integer.parseInt(args[0])
+				: Math.max(2, Runtime.getRuntime().availableProcessors());
+		int documents = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		File dir = Files.createTempDirectory("lse-stress").toFile();
+		boolean passed = false;
+		try {
+			ConcurrentIndexStress stress = new ConcurrentIndexStress(readers, dir, documents);
+			stress.compareWithSequential(stress.indexWhileSearching());
+			stress.measureThroughput();
+			passed = true;
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,691 @@
+package lse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A keyword index that documents can be added to and removed from one at a time. Added
+ * documents are collected in an in-memory buffer, which is written out as a new index
+ * segment file once it holds flushThreshold postings, or when flush is called; documents
+ * become searchable when their segment is written. A removed document is only marked as
+ * deleted in its segment, and is left out of searches from then on.
+ *
+ * Segments are grouped in tiers by the number of their documents, a tier holding
+ * mergeFactor times as many as the one below. Whenever mergeFactor neighboring
+ * segments are in the same tier, a background thread merges them into one segment of the
+ * next tier, dropping deleted documents; segments with more deleted documents than live
+ * ones are rewritten on their own.
+ *
+ * Searches run against an immutable snapshot of the segments, which every change
+ * replaces, so they never wait for documents being added or segments being merged. The
+ * list of segments and the deletion marks are kept in memory only.
+ *
+ */
+public final class IncrementalIndex implements Closeable {
+
+	/**
+	 * Default number of buffered postings at which the buffer is written out as a segment
+	 */
+	public static final int FLUSH_THRESHOLD = 1 << 16;
+
+	/**
+	 * Default number of segments of a tier that are merged into one
+	 */
+	public static final int MERGE_FACTOR = 10;
+
+	/**
+	 * Number of buffered postings at which the buffer is written out as a segment
+	 */
+	private final int flushThreshold;
+
+	/**
+	 * Number of segments of a tier that are merged into one, and ratio of sizes of
+	 * consecutive tiers
+	 */
+	private final int mergeFactor;
+
+	private final Path directory;
+
+	/**
+	 * Holds the noise words, and scans documents for keywords
+	 */
+	private final LittleSearchEngine scanner;
+
+	/**
+	 * Documents added since the last flush, which will make up segment bufferId
+	 */
+	private LittleSearchEngine buffer;
+	private int bufferId;
+	private BitSet bufferDeleted;
+	private int buffered;
+
+	/**
+	 * Where each live document is: segment id in the high 32 bits, document id in the
+	 * segment in the low 32 bits
+	 */
+	private final HashMap<String,Long> live = new HashMap<String,Long>();
+
+	private int nextId;
+	private final AtomicReference<Snapshot> current =
+			new AtomicReference<Snapshot>(new Snapshot(new Segment[0], 0));
+
+	/**
+	 * Version of the current snapshot
+	 */
+	private long version;
+
+	private final QueryCache queryCache = new QueryCache();
+
+	private final ExecutorService merger;
+	private boolean merging;
+	private IOException mergeFailure;
+	private boolean closed;
+
+	/**
+	 * Initializes an empty index, flushing at FLUSH_THRESHOLD postings and merging
+	 * MERGE_FACTOR segments at a time
+	 *
+	 * @param directory Directory for the segment files, created if needed. Segment files
+	 *        are named segment-n.lse, and any left there by an earlier index are replaced.
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @throws IOException If the directory cannot be created or the noise words file read
+	 */
+	public IncrementalIndex(String directory, String noiseWordsFile)
+	throws IOException {
+		this(directory, noiseWordsFile, FLUSH_THRESHOLD, MERGE_FACTOR);
+	}
+
+	/**
+	 * Initializes an empty index
+	 *
+	 * @param directory Directory for the segment files, created if needed. Segment files
+	 *        are named segment-n.lse, and any left there by an earlier index are replaced.
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @param flushThreshold Number of buffered postings at which the buffer is written out
+	 * @param mergeFactor Number of segments of a tier that are merged into one
+	 * @throws IllegalArgumentException If flushThreshold is not positive, or mergeFactor is below 2
+	 * @throws IOException If the directory cannot be created or the noise words file read
+	 */
+	public IncrementalIndex(String directory, String noiseWordsFile, int flushThreshold, int mergeFactor)
+	throws IOException {
+		if (flushThreshold < 1) {
+			throw new IllegalArgumentException("Flush threshold must be positive: " + flushThreshold);
+		}
+		if (mergeFactor < 2) {
+			// a merge of one segment would make a segment of the same tier, forever
+			throw new IllegalArgumentException("Merge factor must be at least 2: " + mergeFactor);
+		}
+		this.flushThreshold = flushThreshold;
+		this.mergeFactor = mergeFactor;
+		this.directory = Files.createDirectories(Paths.get(directory));
+		scanner = new LittleSearchEngine();
+		scanner.loadNoiseWords(noiseWordsFile);
+		newBuffer();
+		merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "lse-merge");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	private void newBuffer() {
+		buffer = new LittleSearchEngine();
+		bufferId = nextId++;
+		bufferDeleted = new BitSet();
+		buffered = 0;
+	}
+
+	/**
+	 * Adds a document, replacing any earlier version of it. The document is searchable
+	 * after the next flush.
+	 *
+	 * @param docFile Name of the document file
+	 * @throws IOException If the document file cannot be read, or a segment cannot be written
+	 */
+	public void addDocument(String docFile)
+	throws IOException {
+		HashMap<String,Occurrence> kws = scanner.loadKeywordsFromDocument(docFile);
+		synchronized (this) {
+			checkOpen();
+			remove(docFile);
+			if (buffer.docIds.containsKey(docFile)) {
+				// an earlier version is in the buffer, under the id the new one would get
+				flushBuffer();
+			}
+			buffer.mergeKeywords(kws, true);
+			Integer id = buffer.docIds.get(docFile);
+			if (id != null) {
+				live.put(docFile, ((long) bufferId << 32) | id);
+			}
+			buffered += kws.size();
+			if (buffered >= flushThreshold) {
+				flushBuffer();
+			}
+		}
+	}
+
+	/**
+	 * Removes a document. Searches stop returning it at once.
+	 *
+	 * @param docFile Name of the document file
+	 * @return True if the document was in the index
+	 */
+	public synchronized boolean removeDocument(String docFile) {
+		checkOpen();
+		return remove(docFile);
+	}
+
+	private boolean remove(String docFile) {
+		Long at = live.remove(docFile);
+		if (at == null) {
+			return false;
+		}
+		int id = (int) (at >>> 32), doc = (int) (long) at;
+		if (id == bufferId) {
+			bufferDeleted.set(doc);
+			return true;
+		}
+		Segment[] segments = current.get().segments.clone();
+		int i = indexOf(segments, id);
+		segments[i] = segments[i].delete(doc);
+		current.set(new Snapshot(segments, ++version));
+		if (2 * segments[i].deletedCount > segments[i].data.docCount()) {
+			scheduleMerge();
+		}
+		return true;
+	}
+
+	private static int indexOf(Segment[] segments, int id) {
+		for (int i = 0; i < segments.length; i++) {
+			if (segments[i].id == id) {
+				return i;
+			}
+		}
+		throw new IllegalStateException("No segment " + id);
+	}
+
+	/**
+	 * Writes out the buffered documents as a segment, making them searchable
+	 *
+	 * @throws IOException If the segment cannot be written, or an earlier background merge failed
+	 */
+	public synchronized void flush()
+	throws IOException {
+		checkOpen();
+		flushBuffer();
+	}
+
+	private void flushBuffer()
+	throws IOException {
+		if (mergeFailure != null) {
+			throw mergeFailure;
+		}
+		if (buffer.documents.isEmpty()) {
+			return;
+		}
+		Path file = directory.resolve("segment-" + bufferId + ".lse");
+		buffer.saveIndex(file.toString());
+		Segment segment = new Segment(bufferId, file, IndexSegment.open(file.toString()),
+				(BitSet) bufferDeleted.clone());
+		Segment[] segments = current.get().segments;
+		segments = Arrays.copyOf(segments, segments.length + 1);
+		segments[segments.length - 1] = segment;
+		current.set(new Snapshot(segments, ++version));
+		newBuffer();
+		scheduleMerge();
+	}
+
+	private void scheduleMerge() {
+		if (!merging && !closed) {
+			merging = true;
+			merger.execute(new Runnable() {
+				public void run() {
+					mergeAll();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Merges segments on the merge thread until the tiers are in order. A failure of any
+	 * kind is kept, to be thrown by the next flush or by close, and stops the merges.
+	 */
+	private void mergeAll() {
+		boolean done = false;
+		try {
+			while (true) {
+				Segment[] run;
+				int id;
+				synchronized (this) {
+					run = closed ? null : pickMerge(current.get().segments);
+					if (run == null) {
+						// cleared together with the check, so that a segment added after it
+						// schedules a merge of its own
+						merging = false;
+						done = true;
+						return;
+					}
+					id = nextId++;
+				}
+				merge(run, id);
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				mergeFailure = e;
+			}
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				mergeFailure = new IOException("Background merge failed", e);
+			}
+		} finally {
+			if (!done) {
+				synchronized (this) {
+					merging = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the first mergeFactor neighboring segments of one tier, or else the first
+	 * segment with more deleted than live documents, or null if there is nothing to merge
+	 */
+	private Segment[] pickMerge(Segment[] segments) {
+		for (int i = 0; i < segments.length;) {
+			int tier = segments[i].tier(mergeFactor), j = i + 1;
+			while (j < segments.length && segments[j].tier(mergeFactor) == tier) {
+				j++;
+			}
+			if (j - i >= mergeFactor) {
+				return Arrays.copyOfRange(segments, i, i + mergeFactor);
+			}
+			i = j;
+		}
+		for (Segment segment : segments) {
+			if (2 * segment.deletedCount > segment.data.docCount()) {
+				return new Segment[] { segment };
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Merges the live documents of neighboring segments into a new segment, and puts it
+	 * in their place. Documents removed while the merge runs are deleted in the new segment.
+	 */
+	private void merge(Segment[] run, int id)
+	throws IOException {
+		HashMap<String,PostingsList> index = new HashMap<String,PostingsList>();
+		ArrayList<String> names = new ArrayList<String>();
+		int[][] remap = new int[run.length][];
+		long totalLength = 0;
+		for (int r = 0; r < run.length; r++) {
+			IndexSegment data = run[r].data;
+			remap[r] = new int[data.docCount()];
+			for (int d = 0; d < remap[r].length; d++) {
+				if (run[r].deleted.get(d)) {
+					remap[r][d] = -1;
+				} else {
+					remap[r][d] = names.size();
+					names.add(data.document(d));
+					totalLength += data.docLength(d);
+				}
+			}
+		}
+		int[] lengths = new int[names.size()];
+		for (int r = 0; r < run.length; r++) {
+			IndexSegment data = run[r].data;
+			for (int d = 0; d < remap[r].length; d++) {
+				if (remap[r][d] >= 0) {
+					lengths[remap[r][d]] = data.docLength(d);
+				}
+			}
+			for (int t = 0; t < data.termCount(); t++) {
+				Postings postings = data.postings(t);
+				PostingsList merged = null;
+				for (int i = 0; i < postings.size(); i++) {
+					int doc = remap[r][postings.doc(i)];
+					if (doc < 0) {
+						continue;
+					}
+					if (merged == null) {
+						String term = data.term(t);
+						merged = index.get(term);
+						if (merged == null) {
+							merged = new PostingsList();
+							index.put(term, merged);
+						}
+					}
+					merged.append(doc, postings.frequency(i));
+				}
+			}
+		}
+		Segment segment = null;
+		if (!names.isEmpty()) {
+			for (PostingsList postings : index.values()) {
+				postings.sort();
+			}
+			Path file = directory.resolve("segment-" + id + ".lse");
+			IndexSegment.write(file.toString(), index, names, lengths, totalLength);
+			segment = new Segment(id, file, IndexSegment.open(file.toString()), new BitSet());
+		}
+
+		synchronized (this) {
+			Segment[] segments = current.get().segments;
+			int at = indexOf(segments, run[0].id);
+			BitSet deleted = new BitSet();
+			for (int r = 0; r < run.length; r++) {
+				Segment now = segments[at + r];
+				if (now.id != run[r].id) {
+					throw new IllegalStateException("Segments moved during merge");
+				}
+				for (int d = 0; d < remap[r].length; d++) {
+					int doc = remap[r][d];
+					if (doc < 0) {
+						continue;
+					}
+					if (now.deleted.get(d)) {
+						deleted.set(doc);
+					} else {
+						Long where = ((long) now.id << 32) | d;
+						if (where.equals(live.get(names.get(doc)))) {
+							live.put(names.get(doc), ((long) id << 32) | doc);
+						}
+					}
+				}
+			}
+			ArrayList<Segment> list = new ArrayList<Segment>(Arrays.asList(segments));
+			list.subList(at, at + run.length).clear();
+			if (segment != null) {
+				list.add(at, new Segment(id, segment.file, segment.data, deleted));
+			}
+			current.set(new Snapshot(list.toArray(new Segment[list.size()]), ++version));
+		}
+		// searches still using the old segments keep their mappings
+		for (Segment old : run) {
+			try {
+				Files.deleteIfExists(old.file);
+			} catch (IOException e) {
+				// left behind, and replaced when the id comes round again
+			}
+		}
+	}
+
+	/**
+	 * Writes out the buffered documents, and merges all segments into one without the
+	 * deleted documents. Waits for any background merge to finish first.
+	 *
+	 * @throws IOException If a segment cannot be written
+	 */
+	public void compact()
+	throws IOException {
+		flush();
+		try {
+			merger.submit(new Callable<Void>() {
+				public Void call()
+				throws IOException {
+					Segment[] run;
+					int id;
+					synchronized (IncrementalIndex.this) {
+						run = current.get().segments;
+						if (run.length == 0 || (run.length == 1 && run[0].deletedCount == 0)) {
+							return null;
+						}
+						id = nextId++;
+					}
+					merge(run, id);
+					return null;
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compacting");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Writes out the buffered documents and waits for background merges to finish. The
+	 * index can still be searched, but no longer changed. The index is closed even if this
+	 * fails; buffered documents that could not be written out are then lost.
+	 *
+	 * @throws IOException If a segment cannot be written, or a background merge failed
+	 */
+	public void close()
+	throws IOException {
+		IOException failure = null;
+		try {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				try {
+					flushBuffer();
+				} catch (IOException e) {
+					failure = e;
+				} finally {
+					closed = true;
+				}
+			}
+		} finally {
+			merger.shutdown();
+		}
+		try {
+			merger.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for merges");
+		}
+		synchronized (this) {
+			if (failure == null) {
+				failure = mergeFailure;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Index is closed");
+		}
+	}
+
+	/**
+	 * Ranked search for a number of keywords in the documents written out so far, as
+	 * LittleSearchEngine.search. Results are kept in the query cache until a flush, merge
+	 * or removal changes the searchable documents.
+	 *
+	 * @param keywords Keywords to search for
+	 * @param all True for documents that have all the keywords, false for any of them
+	 * @param k Largest number of documents to return
+	 * @param scoring How to score a document for the keywords
+	 * @return List of the best scoring matching documents, at most k of them, in descending order of
+	 *         score. If there are no matches, returns null.
+	 * @throws IllegalArgumentException If k is not positive
+	 */
+	public ArrayList<String> search(List<String> keywords, boolean all, int k, Scoring scoring) {
+		Snapshot snapshot = current.get();
+		return queryCache.search(snapshot, snapshot.version, keywords, all, k, scoring);
+	}
+
+	/**
+	 * Returns the cache of search results, with its hit rate and search time percentiles
+	 *
+	 * @return Query cache of the index
+	 */
+	public QueryCache queryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * Search result for "kw1 or kw2", as LittleSearchEngine.top5search
+	 *
+	 * @param kw1 First keyword
+	 * @param kw2 Second keyword
+	 * @return List of documents in which either kw1 or kw2 occurs, arranged in descending order of
+	 *         frequencies. The result size is limited to 5 documents. If there are no matches, returns null.
+	 */
+	public ArrayList<String> top5search(String kw1, String kw2) {
+		return search(Arrays.asList(kw1, kw2), false, 5, Scoring.MAX_FREQUENCY);
+	}
+
+	/**
+	 * Returns the number of searchable documents
+	 *
+	 * @return Number of documents written out and not removed
+	 */
+	public int documentCount() {
+		return current.get().documents;
+	}
+
+	/**
+	 * Returns the number of segments
+	 *
+	 * @return Number of segment files the searchable documents are in
+	 */
+	public int segmentCount() {
+		return current.get().segments.length;
+	}
+
+	/**
+	 * A segment file and its deleted documents. Segments are immutable: deleting a
+	 * document makes a new one.
+	 */
+	private static final class Segment {
+		final int id;
+		final Path file;
+		final IndexSegment data;
+		final BitSet deleted;
+		final int deletedCount;
+
+		/**
+		 * Number of keywords in the live documents
+		 */
+		final long liveLength;
+
+		Segment(int id, Path file, IndexSegment data, BitSet deleted) {
+			this(id, file, data, deleted, data.totalLength() - lengthOf(data, deleted));
+		}
+
+		private Segment(int id, Path file, IndexSegment data, BitSet deleted, long liveLength) {
+			this.id = id;
+			this.file = file;
+			this.data = data;
+			this.deleted = deleted;
+			this.deletedCount = deleted.cardinality();
+			this.liveLength = liveLength;
+		}
+
+		private static long lengthOf(IndexSegment data, BitSet docs) {
+			long length = 0;
+			for (int d = docs.nextSetBit(0); d >= 0; d = docs.nextSetBit(d + 1)) {
+				length += data.docLength(d);
+			}
+			return length;
+		}
+
+		Segment delete(int doc) {
+			BitSet deleted = (BitSet) this.deleted.clone();
+			deleted.set(doc);
+			return new Segment(id, file, data, deleted, liveLength - data.docLength(doc));
+		}
+
+		/**
+		 * Tier of the segment: the number of times its live documents can be divided by
+		 * factor, which is at least 2
+		 */
+		int tier(int factor) {
+			// whole numbers, as a logarithm can come out just under a power of the factor
+			int docs = data.docCount() - deletedCount;
+			int tier = 0;
+			while (docs >= factor) {
+				docs /= factor;
+				tier++;
+			}
+			return tier;
+		}
+	}
+
+	/**
+	 * The segments at one point in time, searched in order
+	 */
+	private static final class Snapshot extends Searcher {
+		final Segment[] segments;
+		final long version;
+		final int documents;
+		final long totalLength;
+		final int minLength;
+
+		Snapshot(Segment[] segments, long version) {
+			this.segments = segments;
+			this.version = version;
+			int documents = 0, minLength = Integer.MAX_VALUE;
+			long totalLength = 0;
+			for (Segment segment : segments) {
+				documents += segment.data.docCount() - segment.deletedCount;
+				totalLength += segment.liveLength;
+				// deleted documents included, which only lowers the bound
+				minLength = Math.min(minLength, segment.data.minLength());
+			}
+			this.documents = documents;
+			this.totalLength = totalLength;
+			this.minLength = minLength;
+		}
+
+		int segmentCount() {
+			return segments.length;
+		}
+
+		Postings postings(int segment, String keyword) {
+			return segments[segment].data.postings(keyword);
+		}
+
+		boolean isDeleted(int segment, int doc) {
+			return segments[segment].deleted.get(doc);
+		}
+
+		int docLength(int segment, int doc) {
+			return segments[segment].data.docLength(doc);
+		}
+
+		String document(int segment, int doc) {
+			return segments[segment].data.document(doc);
+		}
+
+		int documentCount() {
+			return documents;
+		}
+
+		long totalLength() {
+			return totalLength;
+		}
+
+		int minLength() {
+			return minLength;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,550 @@
+package lse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable keyword index in a file, which is memory-mapped and searched in place:
+ * opening a segment reads only its header, a keyword is found by binary search in the
+ * mapped term table, and its postings are read straight from the mapped file. The
+ * layout, with all numbers little-endian, is
+ *
+ *     header: MAGIC, VERSION, number of terms t, number of documents n (ints), number of
+ *             keywords in all documents, size in bytes of the term text, size in bytes
+ *             of the document names, number of postings p (longs)
+ *     term table: t entries of offset and length of the term in the term text, number
+ *             of postings m and index of the first posting (ints), in ascending order
+ *             of the UTF-8 bytes of the terms
+ *     postings: for each term, the m document ids and the m frequencies of its
+ *             postings in DESCENDING order of frequency, then the m positions of
+ *             the postings in ascending order of document id (ints)
+ *     document table: n entries of offset and length of the name in the document
+ *             names, and number of keywords in the document (ints)
+ *     term text: UTF-8 bytes of the terms
+ *     document names: UTF-8 bytes of the document names
+ *
+ * Each section is mapped on its own and so is limited to 2GB, which allows some 178
+ * million postings.
+ *
+ */
+public final class IndexSegment {
+
+	/**
+	 * First int of a segment file
+	 */
+	public static final int MAGIC = 0x4c534549;
+
+	/**
+	 * Version of the layout
+	 */
+	public static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 48;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Default largest number of postings a segment keeps decoded on the heap, over all its
+	 * hot terms
+	 */
+	public static final int POSTINGS_CACHE_SIZE = 1 << 20;
+
+	/**
+	 * Default number of lookups of a term after which its postings are decoded on the heap
+	 */
+	public static final int DECODE_AFTER = 3;
+
+	private final int termCount, docCount;
+	private final long totalLength;
+	private final ByteBuffer table, postings, docTable, termText, names;
+
+	/**
+	 * Number of keywords in the shortest document that has any, -1 until first asked for
+	 */
+	private int minLength = -1;
+
+	/**
+	 * Postings of recently looked up terms, weighed by size: read in place until a term has
+	 * been looked up decodeAfter times, then decoded
+	 */
+	private final StripedCache<String,Postings> cache;
+	private final int decodeAfter;
+
+	private IndexSegment(int termCount, int docCount, long totalLength, ByteBuffer table,
+			ByteBuffer postings, ByteBuffer docTable, ByteBuffer termText, ByteBuffer names,
+			int postingsCacheSize, int decodeAfter) {
+		cache = new StripedCache<String,Postings>(postingsCacheSize, QueryCache.STRIPES);
+		this.decodeAfter = decodeAfter;
+		this.termCount = termCount;
+		this.docCount = docCount;
+		this.totalLength = totalLength;
+		this.table = table;
+		this.postings = postings;
+		this.docTable = docTable;
+		this.termText = termText;
+		this.names = names;
+	}
+
+	/**
+	 * Maps a segment file, with a postings cache of POSTINGS_CACHE_SIZE postings that
+	 * decodes a term after DECODE_AFTER lookups. Only the header is read and checked; a
+	 * damaged file may fail later, when its postings are read.
+	 *
+	 * @param file Name of the segment file
+	 * @return The segment
+	 * @throws IOException If the file cannot be read or is not a segment file
+	 */
+	public static IndexSegment open(String file)
+	throws IOException {
+		return open(file, POSTINGS_CACHE_SIZE, DECODE_AFTER);
+	}
+
+	/**
+	 * Maps a segment file. Only the header is read and checked; a damaged file may
+	 * fail later, when its postings are read.
+	 *
+	 * @param file Name of the segment file
+	 * @param postingsCacheSize Largest number of postings the segment keeps decoded on the
+	 *        heap, over all its hot terms
+	 * @param decodeAfter Number of lookups of a term after which its postings are decoded
+	 * @return The segment
+	 * @throws IllegalArgumentException If postingsCacheSize is negative or decodeAfter is not positive
+	 * @throws IOException If the file cannot be read or is not a segment file
+	 */
+	public static IndexSegment open(String file, int postingsCacheSize, int decodeAfter)
+	throws IOException {
+		if (postingsCacheSize < 0) {
+			throw new IllegalArgumentException("Postings cache size must not be negative: " + postingsCacheSize);
+		}
+		if (decodeAfter < 1) {
+			throw new IllegalArgumentException("Lookups before decoding must be positive: " + decodeAfter);
+		}
+		FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+		try {
+			long size = ch.size();
+			if (size < HEADER_SIZE) {
+				throw new IOException(file + ": not an index segment file");
+			}
+			ByteBuffer header = map(ch, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC) {
+				throw new IOException(file + ": not an index segment file");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException(file + ": unsupported segment version " + version);
+			}
+			int terms = header.getInt(), docs = header.getInt();
+			long totalLength = header.getLong();
+			long textSize = header.getLong(), namesSize = header.getLong();
+			long count = header.getLong();
+			if (terms < 0 || docs < 0 || textSize < 0 || namesSize < 0 || count < 0
+					|| 12 * count > Integer.MAX_VALUE || textSize > Integer.MAX_VALUE
+					|| namesSize > Integer.MAX_VALUE || size != HEADER_SIZE + 16L * terms
+							+ 12 * count + 12L * docs + textSize + namesSize) {
+				throw new IOException(file + ": size does not match segment header");
+			}
+			long pos = HEADER_SIZE;
+			ByteBuffer table = map(ch, pos, 16L * terms);
+			pos += 16L * terms;
+			ByteBuffer postings = map(ch, pos, 12 * count);
+			pos += 12 * count;
+			ByteBuffer docTable = map(ch, pos, 12L * docs);
+			pos += 12L * docs;
+			ByteBuffer termText = map(ch, pos, textSize);
+			pos += textSize;
+			ByteBuffer names = map(ch, pos, namesSize);
+			// the mappings stay valid after the channel is closed
+			return new IndexSegment(terms, docs, totalLength, table, postings, docTable,
+					termText, names, postingsCacheSize, decodeAfter);
+		} finally {
+			ch.close();
+		}
+	}
+
+	private static ByteBuffer map(FileChannel ch, long pos, long size)
+	throws IOException {
+		return ch.map(FileChannel.MapMode.READ_ONLY, pos, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Writes a segment file. The file is written under a temporary name and then renamed,
+	 * so a segment that is open under the same name keeps its old contents.
+	 *
+	 * @param file Name of the segment file, which is replaced if it exists
+	 * @param index Postings of every keyword
+	 * @param documents Names of the documents, by id
+	 * @param docLengths Number of keywords in each document, by id
+	 * @param totalLength Number of keywords in all documents
+	 * @throws IOException If the file cannot be written, or a section would be over 2GB
+	 */
+	public static void write(String file, Map<String,? extends Postings> index,
+			List<String> documents, int[] docLengths, long totalLength)
+	throws IOException {
+		int terms = index.size();
+		byte[][] keys = new byte[terms][];
+		Postings[] lists = new Postings[terms];
+		Integer[] order = new Integer[terms];
+		int t = 0;
+		long textSize = 0, count = 0;
+		for (Map.Entry<String,? extends Postings> e : index.entrySet()) {
+			keys[t] = e.getKey().getBytes(StandardCharsets.UTF_8);
+			lists[t] = e.getValue();
+			order[t] = t;
+			textSize += keys[t].length;
+			count += lists[t].size();
+			t++;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Arrays.compareUnsigned(keys[a], keys[b]);
+			}
+		});
+		int docs = documents.size();
+		byte[][] docNames = new byte[docs][];
+		long namesSize = 0;
+		for (int d = 0; d < docs; d++) {
+			docNames[d] = documents.get(d).getBytes(StandardCharsets.UTF_8);
+			namesSize += docNames[d].length;
+		}
+		if (12 * count > Integer.MAX_VALUE || textSize > Integer.MAX_VALUE
+				|| namesSize > Integer.MAX_VALUE) {
+			throw new IOException(file + ": index too large for a segment");
+		}
+
+		Path path = Paths.get(file);
+		Path tmp = Paths.get(file + ".tmp");
+		FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(MAGIC).putInt(VERSION).putInt(terms).putInt(docs).putLong(totalLength)
+					.putLong(textSize).putLong(namesSize).putLong(count);
+			int offset = 0, first = 0;
+			for (int i = 0; i < terms; i++) {
+				int at = order[i];
+				if (out.remaining() < 16) {
+					drain(ch, out);
+				}
+				out.putInt(offset).putInt(keys[at].length).putInt(lists[at].size()).putInt(first);
+				offset += keys[at].length;
+				first += lists[at].size();
+			}
+			for (int i = 0; i < terms; i++) {
+				Postings p = lists[order[i]];
+				int m = p.size();
+				for (int j = 0; j < m; j++) {
+					if (out.remaining() < 4) {
+						drain(ch, out);
+					}
+					out.putInt(p.doc(j));
+				}
+				for (int j = 0; j < m; j++) {
+					if (out.remaining() < 4) {
+						drain(ch, out);
+					}
+					out.putInt(p.frequency(j));
+				}
+				long[] byDoc = new long[m];
+				for (int j = 0; j < m; j++) {
+					byDoc[j] = ((long) p.doc(j) << 32) | j;
+				}
+				Arrays.sort(byDoc);
+				for (int j = 0; j < m; j++) {
+					if (out.remaining() < 4) {
+						drain(ch, out);
+					}
+					out.putInt((int) byDoc[j]);
+				}
+			}
+			offset = 0;
+			for (int d = 0; d < docs; d++) {
+				if (out.remaining() < 12) {
+					drain(ch, out);
+				}
+				out.putInt(offset).putInt(docNames[d].length).putInt(docLengths[d]);
+				offset += docNames[d].length;
+			}
+			for (int i = 0; i < terms; i++) {
+				put(ch, out, keys[order[i]]);
+			}
+			for (int d = 0; d < docs; d++) {
+				put(ch, out, docNames[d]);
+			}
+			drain(ch, out);
+		} finally {
+			ch.close();
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void put(FileChannel ch, ByteBuffer out, byte[] bytes)
+	throws IOException {
+		for (int i = 0; i < bytes.length;) {
+			if (!out.hasRemaining()) {
+				drain(ch, out);
+			}
+			int k = Math.min(out.remaining(), bytes.length - i);
+			out.put(bytes, i, k);
+			i += k;
+		}
+	}
+
+	private static void drain(FileChannel ch, ByteBuffer out)
+	throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			ch.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Returns the number of terms
+	 *
+	 * @return Number of keywords in the segment
+	 */
+	public int termCount() {
+		return termCount;
+	}
+
+	/**
+	 * Returns the number of documents
+	 *
+	 * @return Number of documents in the segment
+	 */
+	public int docCount() {
+		return docCount;
+	}
+
+	/**
+	 * Returns the number of keywords in all documents
+	 *
+	 * @return Sum of the frequencies of all postings
+	 */
+	public long totalLength() {
+		return totalLength;
+	}
+
+	/**
+	 * Returns the number of keywords in the shortest document that has any, which is
+	 * found by reading the whole document table the first time
+	 *
+	 * @return Smallest positive document length, Integer.MAX_VALUE if there is none
+	 */
+	public int minLength() {
+		int min = minLength;
+		if (min < 0) {
+			min = Integer.MAX_VALUE;
+			for (int d = 0; d < docCount; d++) {
+				int length = docTable.getInt(12 * d + 8);
+				if (length > 0 && length < min) {
+					min = length;
+				}
+			}
+			minLength = min;
+		}
+		return min;
+	}
+
+	/**
+	 * Returns a term
+	 *
+	 * @param i Term number, terms being in ascending order of their UTF-8 bytes
+	 * @return The term
+	 */
+	public String term(int i) {
+		int at = 16 * check(i, termCount);
+		return text(termText, table.getInt(at), table.getInt(at + 4));
+	}
+
+	/**
+	 * Returns the postings of a term
+	 *
+	 * @param i Term number, terms being in ascending order of their UTF-8 bytes
+	 * @return Postings of the term, read from the segment
+	 */
+	public Postings postings(int i) {
+		int at = 16 * check(i, termCount);
+		return new SegmentPostings(postings, 12 * table.getInt(at + 12), table.getInt(at + 8));
+	}
+
+	/**
+	 * Returns the postings of a term. The postings of terms looked up often are decoded
+	 * and cached, so they are read from the heap.
+	 *
+	 * @param term Term
+	 * @return Postings of the term, null if the term is not in the segment
+	 */
+	public Postings postings(String term) {
+		Postings cached = cache.get(term);
+		if (!(cached instanceof SegmentPostings)) {
+			// decoded, or not cached
+			return cached != null ? cached : find(term);
+		}
+		SegmentPostings found = (SegmentPostings) cached;
+		if (++found.lookups < decodeAfter || found.size > cache.maxWeight()) {
+			return found;
+		}
+		PostingsList decoded = found.decode();
+		cache.put(term, decoded, decoded.size());
+		return decoded;
+	}
+
+	/**
+	 * Finds a term by binary search in the term table, and caches its postings
+	 */
+	private Postings find(String term) {
+		byte[] key = term.getBytes(StandardCharsets.UTF_8);
+		int l = 0, r = termCount - 1;
+		while (l <= r) {
+			int m = (l + r) >>> 1;
+			int c = compare(key, table.getInt(16 * m), table.getInt(16 * m + 4));
+			if (c > 0) {
+				l = m + 1;
+			} else if (c < 0) {
+				r = m - 1;
+			} else {
+				Postings found = postings(m);
+				cache.put(term, found, 1);
+				return found;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Compares a key to a term of the term text, as unsigned bytes
+	 */
+	private int compare(byte[] key, int offset, int length) {
+		int n = Math.min(key.length, length);
+		for (int i = 0; i < n; i++) {
+			int c = (key[i] & 0xff) - (termText.get(offset + i) & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return key.length - length;
+	}
+
+	/**
+	 * Returns the cached postings of the segment's hot terms
+	 *
+	 * @return Cache of postings by term, with its hit rate
+	 */
+	public StripedCache<?,?> postingsCache() {
+		return cache;
+	}
+
+	/**
+	 * Returns the name of a document
+	 *
+	 * @param id Document id
+	 * @return Name of the document
+	 */
+	public String document(int id) {
+		int at = 12 * check(id, docCount);
+		return text(names, docTable.getInt(at), docTable.getInt(at + 4));
+	}
+
+	/**
+	 * Returns the number of keywords in a document
+	 *
+	 * @param id Document id
+	 * @return Sum of the frequencies of the document's postings
+	 */
+	public int docLength(int id) {
+		return docTable.getInt(12 * check(id, docCount) + 8);
+	}
+
+	private static int check(int i, int n) {
+		if (i < 0 || i >= n) {
+			throw new IndexOutOfBoundsException(i + " of " + n);
+		}
+		return i;
+	}
+
+	private static String text(ByteBuffer buf, int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buf.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Postings of one term, read in place from the mapped postings section
+	 */
+	private static final class SegmentPostings implements Postings {
+		final ByteBuffer buf;
+		final int base, size;
+
+		/**
+		 * Number of times the postings have been looked up by term, counted without
+		 * synchronization and so only roughly
+		 */
+		int lookups;
+
+		SegmentPostings(ByteBuffer buf, int base, int size) {
+			this.buf = buf;
+			this.base = base;
+			this.size = size;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int doc(int i) {
+			return buf.getInt(base + 4 * check(i, size));
+		}
+
+		public int frequency(int i) {
+			return buf.getInt(base + 4 * (size + check(i, size)));
+		}
+
+		public int frequencyOf(int doc) {
+			int byDoc = base + 8 * size;
+			int l = 0, r = size - 1;
+			while (l <= r) {
+				int m = (l + r) >>> 1;
+				int at = buf.getInt(byDoc + 4 * m);
+				int d = buf.getInt(base + 4 * at);
+				if (d < doc) {
+					l = m + 1;
+				} else if (d > doc) {
+					r = m - 1;
+				} else {
+					return buf.getInt(base + 4 * (size + at));
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Copies the postings to the heap
+		 */
+		PostingsList decode() {
+			ByteBuffer at = buf.duplicate();
+			at.position(base);
+			IntBuffer ints = at.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			int[] docs = new int[size], freqs = new int[size], byDoc = new int[size];
+			ints.get(docs);
+			ints.get(freqs);
+			ints.get(byDoc);
+			return new PostingsList(docs, freqs, byDoc);
+		}
+	}
+}
\ No newline at end of file
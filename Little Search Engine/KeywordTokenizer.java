@@ -0,0 +1,263 @@
+package lse;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Scans documents for keywords by the rules of LittleSearchEngine.getKeyword, without
+ * making a String of every word. A document is read through a reusable byte buffer and
+ * decoded into a reusable char buffer; each word is copied into a reusable char array,
+ * where its trailing punctuation is dropped, its letters checked and its case lowered.
+ * Noise words are dropped by a NoiseWordFilter reading the same array, and the other
+ * keywords of a document are counted in an open-addressing table keyed by their chars,
+ * so a String is made only the first time a keyword is met in the document.
+ *
+ * A tokenizer keeps state between documents and must not be shared between threads.
+ *
+ */
+public final class KeywordTokenizer {
+
+	static final int BUFFER_SIZE = 1 << 16;
+
+	private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+	private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+	private final CharsetDecoder decoder;
+
+	/**
+	 * The word being read
+	 */
+	private char[] word = new char[64];
+	private int length;
+
+	/**
+	 * Words of the current document: slots hold term number + 1, 0 for an empty slot
+	 */
+	private int[] slots = new int[256];
+	private String[] terms = new String[128];
+	private int[] hashes = new int[128];
+
+	/**
+	 * Occurrences of each term in the current document
+	 */
+	private int[] counts = new int[128];
+	private int size;
+
+	/**
+	 * Initializes a tokenizer that reads documents in the platform's default charset,
+	 * as Scanner does
+	 */
+	public KeywordTokenizer() {
+		this(Charset.defaultCharset());
+	}
+
+	/**
+	 * Initializes a tokenizer
+	 *
+	 * @param charset Charset of the documents
+	 */
+	public KeywordTokenizer(Charset charset) {
+		decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Scans a document, and loads all keywords found into a hash table of keyword
+	 * occurrences in the document. Words are separated by whitespace.
+	 *
+	 * @param docFile Name of the document file to be scanned and loaded
+	 * @param noiseWords Noise words, in lower case
+	 * @return Hash table of keywords in the given document, each associated with an Occurrence object
+	 * @throws FileNotFoundException If the document file is not found on disk
+	 * @throws UncheckedIOException If the document file cannot be read
+	 */
+	public HashMap<String,Occurrence> load(String docFile, NoiseWordFilter noiseWords)
+	throws FileNotFoundException {
+		clear();
+		FileInputStream in = new FileInputStream(docFile);
+		try {
+			FileChannel ch = in.getChannel();
+			decoder.reset();
+			bytes.clear();
+			length = 0;
+			boolean eof = false, done = false;
+			while (!done) {
+				if (!eof) {
+					eof = ch.read(bytes) < 0;
+				}
+				bytes.flip();
+				chars.clear();
+				if (decoder.decode(bytes, chars, eof).isUnderflow() && eof) {
+					while (decoder.flush(chars).isOverflow()) {
+						chars.flip();
+						scan(noiseWords);
+						chars.clear();
+					}
+					done = true;
+				}
+				bytes.compact();
+				chars.flip();
+				scan(noiseWords);
+			}
+			if (length > 0) {
+				accept(noiseWords);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(docFile + ": " + e.getMessage(), e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// nothing was written
+			}
+		}
+
+		HashMap<String,Occurrence> map = new HashMap<String,Occurrence>(2 * size);
+		for (int t = 0; t < size; t++) {
+			map.put(terms[t], new Occurrence(docFile, counts[t]));
+		}
+		return map;
+	}
+
+	/**
+	 * Splits the decoded chars into words, carrying a word that runs past the end over
+	 * to the next call
+	 */
+	private void scan(NoiseWordFilter noiseWords) {
+		char[] a = chars.array();
+		int end = chars.limit();
+		for (int i = chars.position(); i < end; i++) {
+			char c = a[i];
+			if (Character.isWhitespace(c)) {
+				if (length > 0) {
+					accept(noiseWords);
+				}
+			} else {
+				if (length == word.length) {
+					word = Arrays.copyOf(word, length * 2);
+				}
+				word[length++] = c;
+			}
+		}
+	}
+
+	/**
+	 * Applies the keyword rules to the word read, and counts it if it is a keyword
+	 */
+	private void accept(NoiseWordFilter noiseWords) {
+		int n = length;
+		length = 0;
+		while (n > 0 && isPunctuation(word[n - 1])) {
+			n--;
+		}
+		boolean ascii = true;
+		for (int i = 0; i < n; i++) {
+			char c = word[i];
+			if (!Character.isLetter(c)) {
+				return;
+			}
+			if (c >= 0x80) {
+				ascii = false;
+			}
+		}
+		if (ascii) {
+			for (int i = 0; i < n; i++) {
+				char c = word[i];
+				if (c >= 'A' && c <= 'Z') {
+					word[i] = (char) (c + ('a' - 'A'));
+				}
+			}
+		} else {
+			// locale and context rules of String.toLowerCase, which can change the length
+			String lower = new String(word, 0, n).toLowerCase();
+			n = lower.length();
+			if (n > word.length) {
+				word = new char[n * 2];
+			}
+			lower.getChars(0, n, word, 0);
+		}
+		count(n, noiseWords);
+	}
+
+	private static boolean isPunctuation(char c) {
+		return c == '.' || c == ',' || c == '?' || c == ':' || c == ';' || c == '!';
+	}
+
+	/**
+	 * Counts the lower case keyword in word[0..n-1], unless it is a noise word
+	 */
+	private void count(int n, NoiseWordFilter noiseWords) {
+		if (noiseWords.contains(word, 0, n)) {
+			return;
+		}
+		int h = 0;
+		for (int i = 0; i < n; i++) {
+			h = 31 * h + word[i];
+		}
+		int mask = slots.length - 1;
+		for (int s = (h ^ (h >>> 16)) & mask; ; s = (s + 1) & mask) {
+			int t = slots[s] - 1;
+			if (t < 0) {
+				add(s, new String(word, 0, n), h);
+				return;
+			}
+			if (hashes[t] == h && matches(terms[t], n)) {
+				counts[t]++;
+				return;
+			}
+		}
+	}
+
+	private boolean matches(String term, int n) {
+		if (term.length() != n) {
+			return false;
+		}
+		for (int i = 0; i < n; i++) {
+			if (term.charAt(i) != word[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void add(int slot, String term, int hash) {
+		if (size == terms.length) {
+			terms = Arrays.copyOf(terms, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+			counts = Arrays.copyOf(counts, size * 2);
+		}
+		terms[size] = term;
+		hashes[size] = hash;
+		counts[size] = 1;
+		slots[slot] = ++size;
+		// at most half full
+		if (2 * size > slots.length) {
+			slots = new int[slots.length * 2];
+			int mask = slots.length - 1;
+			for (int t = 0; t < size; t++) {
+				int s = (hashes[t] ^ (hashes[t] >>> 16)) & mask;
+				while (slots[s] != 0) {
+					s = (s + 1) & mask;
+				}
+				slots[s] = t + 1;
+			}
+		}
+	}
+
+	private void clear() {
+		if (size > 0) {
+			Arrays.fill(slots, 0);
+			Arrays.fill(terms, 0, size, null);
+			size = 0;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,115 @@
+package lse;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of durations in nanoseconds, in buckets whose widths grow with the durations so
+ * that any percentile is known to within 1/SUB_BUCKETS of its value. A duration d falls
+ * in one of SUB_BUCKETS equal buckets between the powers of 2 below and above it. Many
+ * threads can record at once; a percentile read while they do may miss the latest counts.
+ *
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * Buckets between consecutive powers of 2
+	 */
+	static final int SUB_BUCKETS = 8;
+
+	private static final int SHIFT = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+	private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+
+	/**
+	 * Records a duration
+	 *
+	 * @param nanos Duration in nanoseconds, negative durations counting as 0
+	 */
+	public void record(long nanos) {
+		counts.incrementAndGet(bucket(Math.max(nanos, 0)));
+	}
+
+	/**
+	 * Bucket of a duration: durations below SUB_BUCKETS have a bucket each, then each power
+	 * of 2 has SUB_BUCKETS of them, told apart by the bits below the highest one
+	 */
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exp - SHIFT)) & (SUB_BUCKETS - 1);
+		return (exp - SHIFT + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Largest duration in a bucket
+	 */
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exp = bucket / SUB_BUCKETS + SHIFT - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exp - SHIFT)) - 1;
+	}
+
+	/**
+	 * Returns the number of durations recorded
+	 *
+	 * @return Count
+	 */
+	public long count() {
+		long count = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a percentile of the durations recorded
+	 *
+	 * @param p Percentile, from 0 to 100
+	 * @return Duration in nanoseconds that p percent of the durations do not exceed, rounded
+	 *         up to the end of its bucket; 0 if nothing has been recorded
+	 * @throws IllegalArgumentException If p is not from 0 to 100
+	 */
+	public long percentile(double p) {
+		if (!(p >= 0 && p <= 100)) {
+			throw new IllegalArgumentException("Percentile must be from 0 to 100, not " + p);
+		}
+		long[] snapshot = new long[counts.length()];
+		long count = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(p / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(snapshot.length - 1);
+	}
+
+	/**
+	 * Forgets all durations recorded
+	 */
+	public void clear() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	public String toString() {
+		return String.format("%d queries, p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us", count(),
+				percentile(50) / 1e3, percentile(90) / 1e3, percentile(99) / 1e3, percentile(99.9) / 1e3);
+	}
+}
\ No newline at end of file
@@ -2,37 +2,121 @@ package lse;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This class builds an index of keywords. Each keyword maps to a set of pages in
  * which it occurs, with frequency of occurrence in each page.
+ * 
+ * Any number of threads may search the index while one thread at a time adds to it.
+ * Methods that change the index lock the engine, and searches take no lock: a postings
+ * list is never changed once it is in the keywordsIndex table, but replaced with a new
+ * one, and a document's name and length are in place before any list refers to it.
  *
  */
 public class LittleSearchEngine {
 	
 	/**
 	 * This is a hash table of all keywords. The key is the actual keyword, and the associated value is
-	 * an array list of all occurrences of the keyword in documents. The array list is maintained in 
-	 * DESCENDING order of frequencies.
+	 * the postings list of all occurrences of the keyword in documents. The postings list is maintained in 
+	 * DESCENDING order of frequencies, and is replaced rather than changed when occurrences are added.
 	 */
-	HashMap<String,ArrayList<Occurrence>> keywordsIndex;
+	ConcurrentHashMap<String,PostingsList> keywordsIndex;
 	
 	/**
-	 * The hash set of all noise words.
+	 * Postings lists of occurrences merged in bulk, out of order, which finishMerge sorts into
+	 * keywordsIndex.
 	 */
-	HashSet<String> noiseWords;
+	private HashMap<String,PostingsList> pending;
+	
+	/**
+	 * Names of all indexed documents. The position of a document in this list is the id
+	 * by which the postings lists refer to it. Only methods that change the index read it;
+	 * searches read the docNames array.
+	 */
+	ArrayList<String> documents;
+	
+	/**
+	 * Names of the first docCount documents, by document id.
+	 */
+	private volatile String[] docNames;
+	private volatile int docCount;
+	
+	/**
+	 * Ids of all indexed documents, keyed by document name.
+	 */
+	HashMap<String,Integer> docIds;
+	
+	/**
+	 * Number of keywords in each indexed document, by document id, for length-normalized scoring.
+	 */
+	volatile int[] docLengths;
+	
+	/**
+	 * Number of keywords in all indexed documents.
+	 */
+	volatile long totalLength;
+	
+	/**
+	 * Number of keywords in the shortest indexed document that has any, or less: it is
+	 * lowered as documents are added, but not raised when a short document is added to.
+	 * Integer.MAX_VALUE if no document has any keywords.
+	 */
+	volatile int minLength = Integer.MAX_VALUE;
+	
+	/**
+	 * Segment file the index was loaded from by loadIndex, null for an index built in memory.
+	 * A loaded index is searched in place and cannot be added to.
+	 */
+	volatile IndexSegment segment;
+	
+	/**
+	 * Count of changes to the index, by which cached search results are checked. It is
+	 * advanced after each change is in place.
+	 */
+	private volatile long version;
+	
+	/**
+	 * The hash set of all noise words. Private, as every change to it must be followed by
+	 * compiling noiseFilter again.
+	 */
+	private HashSet<String> noiseWords;
+	
+	/**
+	 * The noise words compiled for lookup straight from a word's chars, built again
+	 * whenever noise words are added.
+	 */
+	NoiseWordFilter noiseFilter;
 	
 	/**
 	 * Creates the keyWordsIndex and noiseWords hash tables.
 	 */
 	public LittleSearchEngine() {
-		keywordsIndex = new HashMap<String,ArrayList<Occurrence>>(1000,2.0f);
-		noiseWords = new HashSet<String>(100,2.0f);
+		this(QueryCache.CAPACITY);
+	}
+	
+	/**
+	 * Creates the keyWordsIndex and noiseWords hash tables, and a query cache of the given size.
+	 * 
+	 * @param queryCacheCapacity Number of search results to cache, 0 for none
+	 * @throws IllegalArgumentException If queryCacheCapacity is negative
+	 */
+	public LittleSearchEngine(int queryCacheCapacity) {
+		queryCache = new QueryCache(queryCacheCapacity, QueryCache.STRIPES);
+		keywordsIndex = new ConcurrentHashMap<String,PostingsList>(1000);
+		pending = new HashMap<String,PostingsList>();
+		documents = new ArrayList<String>();
+		docIds = new HashMap<String,Integer>();
+		docNames = new String[16];
+		docLengths = new int[16];
+		noiseWords = new HashSet<String>(100);
+		noiseFilter = NoiseWordFilter.EMPTY;
 	}
 	
 	/**
 	 * Scans a document, and loads all keywords found into a hash table of keyword occurrences
-	 * in the document. Uses the getKeyWord method to separate keywords from other words.
+	 * in the document. Keywords are separated from other words by the rules of the getKeyword
+	 * method, applied in place by a KeywordTokenizer so that only keywords become Strings.
 	 * 
 	 * @param docFile Name of the document file to be scanned and loaded
 	 * @return Hash table of keywords in the given document, each associated with an Occurrence object
@@ -40,54 +124,179 @@ public class LittleSearchEngine {
 	 */
 	public HashMap<String,Occurrence> loadKeywordsFromDocument(String docFile) 
 	throws FileNotFoundException {
-		HashMap <String, Occurrence> map = new HashMap<String, Occurrence>();
-		Scanner input = new Scanner (new File (docFile));
-		
-		while (input.hasNext()) 
+		return tokenizers.get().load(docFile, noiseFilter);
+	}
+	
+	/**
+	 * A tokenizer for each thread that scans documents, as makeIndex may scan several at once.
+	 */
+	private final ThreadLocal<KeywordTokenizer> tokenizers = new ThreadLocal<KeywordTokenizer>() {
+		protected KeywordTokenizer initialValue() {
+			return new KeywordTokenizer();
+		}
+	};
+
+	
+	/**
+	 * Merges the keywords for a single document into the master keywordsIndex
+	 * hash table. For each keyword, its Occurrence in the current document
+	 * must be inserted in the correct place (according to descending order of
+	 * frequency) in the same keyword's postings list in the master hash table. 
+	 * The spot is found by binary search, as in the insertLastOccurrence method, in a copy of
+	 * the list that then replaces it, so that searches running meanwhile are not disturbed.
+	 * Each Occurrence so costs time in proportion to the length of its keyword's list, even
+	 * where an insertion in place would move only a few postings. To index more than a few
+	 * documents, merge them with mergeKeywords(kws, true) and call finishMerge once, as
+	 * makeIndex does.
+	 * 
+	 * @param kws Keywords hash table for a document
+	 */
+	public void mergeKeywords(HashMap<String,Occurrence> kws) {
+		mergeKeywords(kws, false);
+	}
+	
+	/**
+	 * Merges the keywords for a single document into the master keywordsIndex
+	 * hash table. In bulk mode, each Occurrence is appended to the end of a pending postings
+	 * list for its keyword, out of order, and finishMerge must be called once all documents
+	 * have been merged to sort the lists into the index; until then searches do not find
+	 * them. Otherwise each Occurrence is inserted in order, as in mergeKeywords(HashMap),
+	 * at the cost of copying its keyword's list.
+	 * 
+	 * @param kws Keywords hash table for a document
+	 * @param bulk Whether to append the occurrences for a later finishMerge
+	 */
+	public synchronized void mergeKeywords(HashMap<String,Occurrence> kws, boolean bulk) {
+		checkInMemory();
+		// lengths first, so that a search finding a document has its length
+		int[] ids = new int[kws.size()];
+		int i = 0;
+		for (Occurrence occ : kws.values())
+		{
+			ids[i] = docId(occ.document);
+			docLengths[ids[i++]] += occ.frequency;
+			totalLength += occ.frequency;
+		}
+		for (int doc : ids)
 		{
-			String word = getKeyword(input.next());
-			if(word == null)
+			int length = docLengths[doc];
+			if (length > 0 && length < minLength)
 			{
+				minLength = length;
+			}
+		}
+		i = 0;
+		for (Map.Entry<String,Occurrence> e : kws.entrySet())
+		{
+			Occurrence occ = e.getValue();
+			int doc = ids[i++];
+			if (bulk)
+			{
+				PostingsList postings = pending.get(e.getKey());
+				if (postings == null)
+				{
+					postings = new PostingsList();
+					pending.put(e.getKey(), postings);
+				}
+				postings.append(doc, occ.frequency);
 				continue;
 			}
-
-			Occurrence occ = map.get(word);
-			if (occ != null)
+			PostingsList postings = keywordsIndex.get(e.getKey());
+			if (postings == null)
 			{
-				occ.frequency++;
+				postings = new PostingsList(1);
+				postings.insert(doc, occ.frequency);
 			}
-			else 
+			else
 			{
-				map.put(word, new Occurrence(docFile, 1));
+				postings = postings.with(doc, occ.frequency);
 			}
-			
+			keywordsIndex.put(e.getKey(), postings);
 		}
-		input.close();
-		return map;
+		version++;
 	}
-
 	
 	/**
-	 * Merges the keywords for a single document into the master keywordsIndex
-	 * hash table. For each keyword, its Occurrence in the current document
-	 * must be inserted in the correct place (according to descending order of
-	 * frequency) in the same keyword's Occurrence list in the master hash table. 
-	 * This is done by calling the insertLastOccurrence method.
+	 * Sorts the occurrences merged by a bulk mergeKeywords into the postings lists of the
+	 * index, in DESCENDING order of frequencies.
+	 */
+	public synchronized void finishMerge() {
+		if (pending.isEmpty())
+		{
+			return;
+		}
+		publish(pending);
+		pending.clear();
+		version++;
+	}
+	
+	/**
+	 * Adds postings lists, which need not be in order, to the index. A keyword's list in
+	 * the index is replaced by a sorted list of its own and the new postings.
 	 * 
-	 * @param kws Keywords hash table for a document
+	 * @param index Postings lists by keyword
 	 */
-	public void mergeKeywords(HashMap<String,Occurrence> kws) {
-		for (String k : kws.keySet())
+	private void publish(Map<String,PostingsList> index) {
+		for (Map.Entry<String,PostingsList> e : index.entrySet())
 		{
-			ArrayList<Occurrence> occ = new ArrayList<Occurrence>();
-			if (keywordsIndex.containsKey(k))
+			PostingsList postings = e.getValue();
+			PostingsList old = keywordsIndex.get(e.getKey());
+			if (old != null)
 			{
-				occ = keywordsIndex.get(k);
+				PostingsList merged = new PostingsList(old.size() + postings.size());
+				merged.addAll(old);
+				merged.addAll(postings);
+				postings = merged;
 			}
-			occ.add(kws.get(k));
-			insertLastOccurrence(occ);
-			keywordsIndex.put(k, occ);
+			postings.sort();
+			keywordsIndex.put(e.getKey(), postings);
+		}
+	}
+	
+	/**
+	 * Returns the id of a document, assigning it the next free id if it has not been
+	 * seen before.
+	 * 
+	 * @param docFile Name of the document
+	 * @return Id of the document
+	 */
+	int docId(String docFile) {
+		Integer id = docIds.get(docFile);
+		if (id == null)
+		{
+			id = documents.size();
+			documents.add(docFile);
+			docIds.put(docFile, id);
+			if (id == docNames.length)
+			{
+				docNames = Arrays.copyOf(docNames, id * 2);
+				docLengths = Arrays.copyOf(docLengths, id * 2);
+			}
+			docNames[id] = docFile;
+			docCount = id + 1;
+		}
+		return id;
+	}
+	
+	/**
+	 * Returns the occurrences of a keyword as Occurrence objects, in DESCENDING order of
+	 * frequencies. The list is built from the postings list on every call.
+	 * 
+	 * @param keyword Keyword
+	 * @return List of occurrences of the keyword, null if it is not in the index
+	 */
+	public ArrayList<Occurrence> getOccurrences(String keyword) {
+		Postings postings = postings(keyword);
+		if (postings == null)
+		{
+			return null;
 		}
+		ArrayList<Occurrence> occs = new ArrayList<Occurrence>(postings.size());
+		for (int i = 0; i < postings.size(); i++)
+		{
+			occs.add(new Occurrence(document(postings.doc(i)), postings.frequency(i)));
+		}
+		return occs;
 	}
 	
 	/**
@@ -116,7 +325,7 @@ public class LittleSearchEngine {
             }
 		}
 		word = word.toLowerCase();
-        if(noiseWords.contains(word)) 
+        if(noiseFilter.contains(word)) 
         {
             return null;
         }		
@@ -154,16 +363,16 @@ public class LittleSearchEngine {
 			 return null;
 		}
 		
-		Occurrence insert = occs.get(occs.size() - 1);
+		Occurrence insert = occs.remove(occs.size() - 1);
 		
-		occs.remove(insert);
-		
-		int l = 0; int r = occs.size()-1; int m=0;
+		// find the first occurrence with a lower frequency, so equal frequencies keep
+		// the order in which they were inserted
+		int l = 0; int r = occs.size()-1;
 		ArrayList<Integer> seq = new ArrayList<Integer>();
 		
 		while(l<=r) 
 		{
-			m = (l+(r-1))/2;
+			int m = (l+r) >>> 1;
 			seq.add(m);
 			if(occs.get(m).frequency < insert.frequency)
 			{
@@ -174,50 +383,296 @@ public class LittleSearchEngine {
 				l = m+1;
 			}
 		}
-	     
-	     if(insert.frequency < occs.get(m).frequency)
-	     {
-	    	 	m++;
-	     }
-	     occs.add(occs.get(occs.size()-1));
-	     int i = occs.size() - 2;
-	     while(i > m)
-	     {
-	    	 	occs.set(i, occs.get(i-1));
-	    	 	i--;
-	     }
-	     occs.set(m, insert);
-	     
+		occs.add(l, insert);
+		
 		return seq;
 	}
 	
 	/**
 	 * This method indexes all keywords found in all the input documents. When this
 	 * method is done, the keywordsIndex hash table will be filled with all keywords,
-	 * each of which is associated with an array list of Occurrence objects, arranged
-	 * in decreasing frequencies of occurrence.
+	 * each of which is associated with a postings list of its occurrences, arranged
+	 * in decreasing frequencies of occurrence. Occurrences are merged in bulk, and each
+	 * postings list is sorted once all documents have been scanned.
 	 * 
 	 * @param docsFile Name of file that has a list of all the document file names, one name per line
 	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
 	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
 	 */
-	public void makeIndex(String docsFile, String noiseWordsFile) 
+	public synchronized void makeIndex(String docsFile, String noiseWordsFile) 
 	throws FileNotFoundException {
+		checkInMemory();
 		// load noise words to hash table
-		Scanner sc = new Scanner(new File(noiseWordsFile));
-		while (sc.hasNext()) {
-			String word = sc.next();
-			noiseWords.add(word);
-		}
+		loadNoiseWords(noiseWordsFile);
 		
 		// index all keywords
-		sc = new Scanner(new File(docsFile));
+		Scanner sc = new Scanner(new File(docsFile));
 		while (sc.hasNext()) {
 			String docFile = sc.next();
 			HashMap<String,Occurrence> kws = loadKeywordsFromDocument(docFile);
-			mergeKeywords(kws);
+			mergeKeywords(kws, true);
+		}
+		sc.close();
+		finishMerge();
+	}
+	
+	/**
+	 * Indexes all keywords found in all the input documents, like makeIndex(String, String),
+	 * with the documents scanned on the threads of a fork-join pool. Each task scans a range
+	 * of documents into an index of its own, appending postings by the position of the
+	 * document in the documents file without ordering them, and the task indexes are merged
+	 * pairwise as the tasks complete. Once all are scanned, the documents that have keywords
+	 * are given ids in the order of the documents file, the postings are renumbered, and
+	 * each postings list is sorted, so the result is the same as that of the single-threaded
+	 * makeIndex.
+	 * 
+	 * @param docsFile Name of file that has a list of all the document file names, one name per line
+	 * @param noiseWordsFile Name of file that has a list of noise words, one noise word per line
+	 * @param pool Pool in which to scan the documents, whose parallelism sets the number of threads used
+	 * @throws FileNotFoundException If there is a problem locating any of the input files on disk
+	 */
+	public synchronized void makeIndex(String docsFile, String noiseWordsFile, ForkJoinPool pool) 
+	throws FileNotFoundException {
+		checkInMemory();
+		loadNoiseWords(noiseWordsFile);
+		
+		ArrayList<String> names = new ArrayList<String>();
+		Scanner sc = new Scanner(new File(docsFile));
+		while (sc.hasNext()) {
+			names.add(sc.next());
+		}
+		sc.close();
+		int n = names.size();
+		if (n == 0) {
+			return;
+		}
+		String[] docFiles = names.toArray(new String[n]);
+		
+		// a few ranges per thread, so threads that finish early can steal work
+		int leaf = Math.max(1, n / (4 * pool.getParallelism()));
+		int[] lengths = new int[n];
+		HashMap<String,PostingsList> index;
+		try {
+			index = pool.invoke(new IndexTask(docFiles, lengths, leaf, 0, n));
+		} catch (UncheckedIOException e) {
+			// other read errors are unchecked, as in the sequential makeIndex
+			if (e.getCause() instanceof FileNotFoundException) {
+				throw (FileNotFoundException) e.getCause();
+			}
+			throw e;
+		}
+		// as in mergeKeywords, a document without keywords gets no id
+		int[] ids = new int[n];
+		for (int i = 0; i < n; i++) {
+			if (lengths[i] > 0) {
+				ids[i] = docId(docFiles[i]);
+			}
+		}
+		int[] docLengths = this.docLengths;
+		for (int i = 0; i < n; i++) {
+			if (lengths[i] > 0) {
+				docLengths[ids[i]] += lengths[i];
+				totalLength += lengths[i];
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			if (lengths[i] > 0 && docLengths[ids[i]] < minLength) {
+				minLength = docLengths[ids[i]];
+			}
+		}
+		for (PostingsList postings : index.values()) {
+			postings.renumber(ids);
+		}
+		publish(index);
+		version++;
+	}
+	
+	/**
+	 * Writes the index to a segment file, which loadIndex can search in place.
+	 * 
+	 * @param file Name of the segment file, which is replaced if it exists
+	 * @throws IOException If the file cannot be written
+	 */
+	public synchronized void saveIndex(String file) 
+	throws IOException {
+		if (segment == null) {
+			finishMerge();
+			IndexSegment.write(file, keywordsIndex, documents, docLengths, totalLength);
+			return;
+		}
+		HashMap<String,Postings> index = new HashMap<String,Postings>(2 * segment.termCount());
+		for (int i = 0; i < segment.termCount(); i++) {
+			index.put(segment.term(i), segment.postings(i));
+		}
+		int n = segment.docCount();
+		ArrayList<String> names = new ArrayList<String>(n);
+		int[] lengths = new int[n];
+		for (int d = 0; d < n; d++) {
+			names.add(segment.document(d));
+			lengths[d] = segment.docLength(d);
+		}
+		IndexSegment.write(file, index, names, lengths, segment.totalLength());
+	}
+	
+	/**
+	 * Replaces the index with the one in a segment file written by saveIndex. The file is
+	 * memory-mapped and searched in place, so loading takes the same short time whatever
+	 * the size of the index. A loaded index cannot be added to.
+	 * 
+	 * @param file Name of the segment file
+	 * @throws IOException If the file cannot be read or is not a segment file
+	 */
+	public void loadIndex(String file) 
+	throws IOException {
+		loadIndex(file, IndexSegment.POSTINGS_CACHE_SIZE, IndexSegment.DECODE_AFTER);
+	}
+	
+	/**
+	 * Replaces the index with the one in a segment file written by saveIndex, as loadIndex,
+	 * with a postings cache of the given size.
+	 * 
+	 * @param file Name of the segment file
+	 * @param postingsCacheSize Largest number of postings kept decoded on the heap, over all hot terms
+	 * @param decodeAfter Number of lookups of a term after which its postings are decoded
+	 * @throws IllegalArgumentException If postingsCacheSize is negative or decodeAfter is not positive
+	 * @throws IOException If the file cannot be read or is not a segment file
+	 */
+	public synchronized void loadIndex(String file, int postingsCacheSize, int decodeAfter) 
+	throws IOException {
+		IndexSegment loaded = IndexSegment.open(file, postingsCacheSize, decodeAfter);
+		// searches from here on read the segment
+		segment = loaded;
+		keywordsIndex.clear();
+		pending.clear();
+		documents.clear();
+		docIds.clear();
+		docNames = new String[16];
+		docCount = 0;
+		docLengths = new int[16];
+		totalLength = loaded.totalLength();
+		minLength = Integer.MAX_VALUE;
+		version++;
+	}
+	
+	private void checkInMemory() {
+		if (segment != null) {
+			throw new IllegalStateException("Index was loaded from a segment file and cannot be added to");
+		}
+	}
+	
+	/**
+	 * Returns the postings of a keyword, from the loaded segment if there is one.
+	 */
+	Postings postings(String keyword) {
+		IndexSegment segment = this.segment;
+		return segment != null ? segment.postings(keyword) : keywordsIndex.get(keyword);
+	}
+	
+	/**
+	 * Returns the name of a document, from the loaded segment if there is one.
+	 */
+	String document(int id) {
+		IndexSegment segment = this.segment;
+		return segment != null ? segment.document(id) : docNames[id];
+	}
+	
+	/**
+	 * Returns the number of keywords in a document, from the loaded segment if there is one.
+	 */
+	int docLength(int id) {
+		IndexSegment segment = this.segment;
+		return segment != null ? segment.docLength(id) : docLengths[id];
+	}
+	
+	/**
+	 * Returns the number of indexed documents.
+	 */
+	int documentCount() {
+		IndexSegment segment = this.segment;
+		return segment != null ? segment.docCount() : docCount;
+	}
+	
+	void loadNoiseWords(String noiseWordsFile) 
+	throws FileNotFoundException {
+		Scanner sc = new Scanner(new File(noiseWordsFile));
+		while (sc.hasNext()) {
+			String word = sc.next();
+			noiseWords.add(word);
 		}
 		sc.close();
+		noiseFilter = NoiseWordFilter.compile(noiseWords);
+	}
+	
+	/**
+	 * Adds a noise word, which keywords are then checked against.
+	 * 
+	 * @param word Noise word, in lower case
+	 */
+	void addNoiseWord(String word) {
+		noiseWords.add(word);
+		noiseFilter = NoiseWordFilter.compile(noiseWords);
+	}
+	
+	/**
+	 * Fork-join task indexing documents from..to-1 into an index of its own, whose
+	 * postings lists are not in order and refer to documents by position, and counting
+	 * the keywords of each document
+	 */
+	private final class IndexTask extends RecursiveTask<HashMap<String,PostingsList>> {
+		private static final long serialVersionUID = 1L;
+
+		final String[] docFiles;
+		final int[] lengths;
+		final int leaf, from, to;
+		
+		IndexTask(String[] docFiles, int[] lengths, int leaf, int from, int to) {
+			this.docFiles = docFiles;
+			this.lengths = lengths;
+			this.leaf = leaf;
+			this.from = from;
+			this.to = to;
+		}
+		
+		protected HashMap<String,PostingsList> compute() {
+			if (to - from <= leaf) {
+				HashMap<String,PostingsList> index = new HashMap<String,PostingsList>();
+				for (int i = from; i < to; i++) {
+					HashMap<String,Occurrence> kws;
+					try {
+						kws = loadKeywordsFromDocument(docFiles[i]);
+					} catch (FileNotFoundException e) {
+						throw new UncheckedIOException(e);
+					}
+					for (Map.Entry<String,Occurrence> e : kws.entrySet()) {
+						PostingsList postings = index.get(e.getKey());
+						if (postings == null) {
+							postings = new PostingsList();
+							index.put(e.getKey(), postings);
+						}
+						postings.append(i, e.getValue().frequency);
+						lengths[i] += e.getValue().frequency;
+					}
+				}
+				return index;
+			}
+			int mid = (from + to) >>> 1;
+			IndexTask left = new IndexTask(docFiles, lengths, leaf, from, mid);
+			left.fork();
+			HashMap<String,PostingsList> right = new IndexTask(docFiles, lengths, leaf, mid, to).compute();
+			HashMap<String,PostingsList> l = left.join();
+			// fold the smaller index into the larger
+			HashMap<String,PostingsList> into = l.size() >= right.size() ? l : right;
+			HashMap<String,PostingsList> other = into == l ? right : l;
+			for (Map.Entry<String,PostingsList> e : other.entrySet()) {
+				PostingsList postings = into.get(e.getKey());
+				if (postings == null) {
+					into.put(e.getKey(), e.getValue());
+				} else {
+					postings.addAll(e.getValue());
+				}
+			}
+			return into;
+		}
 	}
 	
 	/**
@@ -234,75 +689,95 @@ public class LittleSearchEngine {
 	 *         frequencies. The result size is limited to 5 documents. If there are no matches, returns null.
 	 */
 	public ArrayList<String> top5search(String kw1, String kw2) {
-		ArrayList<String> result = new ArrayList<String>();
-		ArrayList<Occurrence> OccW1 = keywordsIndex.get(kw1);
-		ArrayList<Occurrence> OccW2 = keywordsIndex.get(kw2);
-		if(OccW1 == null && OccW2 == null)
-			return null;
-		else if(OccW2 == null)
-		{
-			for(int i = 0; i < 5 && i < OccW1.size(); i++)
-				result.add(OccW1.get(i).document);
-			return result;
+		return search(Arrays.asList(kw1, kw2), false, 5, Scoring.MAX_FREQUENCY);
+	}
+	
+	/**
+	 * Ranked search for a number of keywords. With all set, a document matches if every one of
+	 * the keywords occurs in it ("kw1 and kw2 and ..."), otherwise if any of them does ("kw1 or kw2
+	 * or ..."). Matching documents are arranged in descending order of score, and ties in score are
+	 * broken in favor of the document in which the earliest keyword has that score, then of the
+	 * document indexed first. (With Scoring.MAX_FREQUENCY and two keywords, this is the order of
+	 * top5search.) Repeated keywords count once.
+	 * 
+	 * The postings lists of the keywords are read in step, a row at a time, in descending order of
+	 * frequencies, and every document met for the first time is scored in full by looking up its
+	 * frequency in the other lists. Since no document further down the lists can score higher than
+	 * the frequencies of the current row allow, reading stops as soon as k documents have been
+	 * found that score better than that, so the time taken depends on k more than on the lengths
+	 * of the lists. Results are kept in the query cache until the index changes.
+	 * 
+	 * @param keywords Keywords to search for
+	 * @param all True for documents that have all the keywords, false for any of them
+	 * @param k Largest number of documents to return
+	 * @param scoring How to score a document for the keywords
+	 * @return List of the best scoring matching documents, at most k of them, in descending order of
+	 *         score. If there are no matches, returns null.
+	 * @throws IllegalArgumentException If k is not positive
+	 */
+	public ArrayList<String> search(List<String> keywords, boolean all, int k, Scoring scoring) {
+		return queryCache.search(view, version, keywords, all, k, scoring);
+	}
+	
+	/**
+	 * Results of recent searches, and the time searches take.
+	 */
+	private final QueryCache queryCache;
+	
+	/**
+	 * Returns the cache of search results, with its hit rate and search time percentiles.
+	 * 
+	 * @return Query cache of the index
+	 */
+	public QueryCache queryCache() {
+		return queryCache;
+	}
+	
+	/**
+	 * Returns the cache of postings decoded from the loaded segment file.
+	 * 
+	 * @return Postings cache of the segment, null if the index is in memory
+	 */
+	public StripedCache<?,?> postingsCache() {
+		return segment != null ? segment.postingsCache() : null;
+	}
+	
+	/**
+	 * The index as a single segment, from the loaded segment file if there is one.
+	 */
+	private final Searcher view = new Searcher() {
+		int segmentCount() {
+			return 1;
 		}
-		else if(OccW1 == null)
-		{
-			for(int i = 0; i < 5 && i < OccW2.size(); i++)
-				result.add(OccW2.get(i).document);
-			return result;
+		
+		Postings postings(int segment, String keyword) {
+			return LittleSearchEngine.this.postings(keyword);
 		}
-		int c = 0; int i1 = 0; int i2 = 0;
-		Occurrence Occ1 = null; Occurrence Occ2 = null;
-		while(i1 < OccW1.size() && i2 < OccW2.size() && c < 5)
-		{
-			Occ1 = OccW1.get(i1);
-			while(i2 < OccW2.size() && c < 5)
-			{
-				Occ2 = OccW2.get(i2);
-				if(Occ1.frequency < Occ2.frequency)
-				{
-					if(result.contains(Occ2.document))
-						continue;
-					result.add(Occ2.document);
-					c++;
-					if(i2 == OccW2.size() - 1)
-						i1--;
-				}
-				else
-				{
-					if(result.contains(Occ1.document))
-						break;
-					result.add(Occ1.document);
-					c++;
-					break;
-				}
-				i2++;
-			}
-			i1++;
+		
+		boolean isDeleted(int segment, int doc) {
+			return false;
 		}
-		if (c < 5)
-		{
-			if(i1 == OccW1.size())
-			{
-				for(;c != 5 && i2 < OccW2.size();i2++, c++)
-				{
-					if(!result.contains(OccW2.get(i2).document))
-						result.add(OccW2.get(i2).document);
-				}
-			}
-			else
-			{
-				for(;c != 5 && i1 < OccW1.size();i1++, c++)
-				{
-					if(!result.contains(OccW1.get(i1).document))
-						result.add(OccW1.get(i1).document);
-					i1++;
-					c++;
-				}
-			}
-				
+		
+		int docLength(int segment, int doc) {
+			return LittleSearchEngine.this.docLength(doc);
 		}
-		return result;
-	}
+		
+		String document(int segment, int doc) {
+			return LittleSearchEngine.this.document(doc);
+		}
+		
+		int documentCount() {
+			return LittleSearchEngine.this.documentCount();
+		}
+		
+		long totalLength() {
+			return totalLength;
+		}
+		
+		int minLength() {
+			IndexSegment segment = LittleSearchEngine.this.segment;
+			return segment != null ? segment.minLength() : minLength;
+		}
+	};
 
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+package lse;
+
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * A fixed set of noise words compiled into a character trie, which checks a word straight
+ * from a range of chars, without making a String of it or hashing it. The trie is held in
+ * flat arrays: the edges out of each state are a block of (label, target) pairs in
+ * ascending order of label, searched by bisection, and a word is in the set if it leads
+ * from the root to an accepting state.
+ *
+ */
+public final class NoiseWordFilter {
+
+	/**
+	 * The filter with no noise words
+	 */
+	public static final NoiseWordFilter EMPTY = compile(new TreeSet<String>());
+
+	/**
+	 * Edges out of state s are first[s]..first[s+1]-1
+	 */
+	private final int[] first;
+	private final char[] labels;
+	private final int[] targets;
+	private final boolean[] accept;
+	private final int size;
+
+	private int states, edges;
+
+	private NoiseWordFilter(String[] words) {
+		int chars = 0;
+		for (String word : words) {
+			chars += word.length();
+		}
+		first = new int[chars + 2];
+		labels = new char[chars];
+		targets = new int[chars];
+		accept = new boolean[chars + 1];
+		size = words.length;
+		build(words, 0, words.length, 0);
+		first[states] = edges;
+	}
+
+	/**
+	 * Compiles a set of noise words
+	 *
+	 * @param words Noise words, in lower case
+	 * @return The filter
+	 */
+	public static NoiseWordFilter compile(Collection<String> words) {
+		TreeSet<String> sorted = new TreeSet<String>(words);
+		return new NoiseWordFilter(sorted.toArray(new String[sorted.size()]));
+	}
+
+	/**
+	 * Adds the state for the common prefix of length depth of words lo..hi-1, which are
+	 * in ascending order and distinct, and the states below it
+	 *
+	 * @return The state
+	 */
+	private int build(String[] words, int lo, int hi, int depth) {
+		int state = states++;
+		if (lo < hi && words[lo].length() == depth) {
+			// a prefix sorts before the words it starts
+			accept[state] = true;
+			lo++;
+		}
+		// the edges of a state are one block, so they are laid out before the states below
+		int e = edges;
+		first[state] = e;
+		for (int i = lo; i < hi; i++) {
+			if (i == lo || words[i].charAt(depth) != words[i - 1].charAt(depth)) {
+				edges++;
+			}
+		}
+		for (int i = lo; i < hi;) {
+			char c = words[i].charAt(depth);
+			int j = i + 1;
+			while (j < hi && words[j].charAt(depth) == c) {
+				j++;
+			}
+			labels[e] = c;
+			targets[e] = build(words, i, j, depth + 1);
+			e++;
+			i = j;
+		}
+		return state;
+	}
+
+	/**
+	 * Returns the number of noise words
+	 *
+	 * @return Number of words in the set
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Whether a word is a noise word
+	 *
+	 * @param word Word, in lower case
+	 * @return True if the word is in the set
+	 */
+	public boolean contains(CharSequence word) {
+		int state = 0;
+		for (int i = 0, n = word.length(); i < n; i++) {
+			state = next(state, word.charAt(i));
+			if (state < 0) {
+				return false;
+			}
+		}
+		return accept[state];
+	}
+
+	/**
+	 * Whether a range of chars is a noise word
+	 *
+	 * @param chars Chars holding the word, in lower case
+	 * @param off Index of the first char of the word
+	 * @param len Length of the word
+	 * @return True if the word is in the set
+	 */
+	public boolean contains(char[] chars, int off, int len) {
+		int state = 0;
+		for (int i = off, end = off + len; i < end; i++) {
+			state = next(state, chars[i]);
+			if (state < 0) {
+				return false;
+			}
+		}
+		return accept[state];
+	}
+
+	/**
+	 * Returns the state reached from a state by a char, -1 if there is no such edge
+	 */
+	private int next(int state, char c) {
+		int l = first[state], r = first[state + 1] - 1;
+		while (l <= r) {
+			int m = (l + r) >>> 1;
+			if (labels[m] < c) {
+				l = m + 1;
+			} else if (labels[m] > c) {
+				r = m - 1;
+			} else {
+				return targets[m];
+			}
+		}
+		return -1;
+	}
+
+	public String toString() {
+		return "NoiseWordFilter[" + size + " words, " + states + " states]";
+	}
+}
\ No newline at end of file
@@ -0,0 +1,40 @@
+package lse;
+
+/**
+ * Read access to the occurrences of one keyword, in DESCENDING order of frequency,
+ * documents with equal frequency in ascending order of id.
+ *
+ */
+public interface Postings {
+
+	/**
+	 * Returns the number of postings
+	 *
+	 * @return Number of documents in which the keyword occurs
+	 */
+	int size();
+
+	/**
+	 * Returns the document of a posting
+	 *
+	 * @param i Posting number, 0 being the highest frequency
+	 * @return Document id
+	 */
+	int doc(int i);
+
+	/**
+	 * Returns the frequency of a posting
+	 *
+	 * @param i Posting number, 0 being the highest frequency
+	 * @return Number of occurrences of the keyword in the document
+	 */
+	int frequency(int i);
+
+	/**
+	 * Returns the frequency of the keyword in a document
+	 *
+	 * @param doc Document id
+	 * @return Frequency, 0 if the keyword does not occur in the document
+	 */
+	int frequencyOf(int doc);
+}
\ No newline at end of file
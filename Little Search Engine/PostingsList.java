@@ -0,0 +1,394 @@
+package lse;
+
+import java.util.Arrays;
+
+/**
+ * Occurrences of one keyword, as parallel arrays of document ids and frequencies in
+ * DESCENDING order of frequency, documents with equal frequency in ascending order of id.
+ * Document ids are positions in LittleSearchEngine's documents list, so an occurrence
+ * costs two ints instead of an Occurrence object and a path string.
+ *
+ */
+public final class PostingsList implements Postings {
+
+	private int[] docs;
+	private int[] freqs;
+	private int size;
+
+	/**
+	 * Positions of the postings in ascending order of document id, built on first lookup
+	 * by document. Volatile, as threads searching a list that is no longer changed may
+	 * build it at the same time.
+	 */
+	private volatile int[] byDoc;
+
+	/**
+	 * False after postings are appended, until the list is sorted again
+	 */
+	private boolean sorted = true;
+
+	/**
+	 * True once with has returned a list that shares this list's arrays
+	 */
+	private boolean extended;
+
+	/**
+	 * Initializes an empty list
+	 */
+	public PostingsList() {
+		this(4);
+	}
+
+	/**
+	 * Initializes an empty list
+	 *
+	 * @param capacity Number of postings to make room for
+	 */
+	public PostingsList(int capacity) {
+		docs = new int[Math.max(capacity, 1)];
+		freqs = new int[docs.length];
+	}
+
+	/**
+	 * Wraps postings that are in order
+	 *
+	 * @param docs Document ids, at least one
+	 * @param freqs Frequencies
+	 * @param byDoc Positions of the postings in ascending order of document id
+	 */
+	PostingsList(int[] docs, int[] freqs, int[] byDoc) {
+		this.docs = docs;
+		this.freqs = freqs;
+		this.byDoc = byDoc;
+		size = docs.length;
+	}
+
+	/**
+	 * Returns the number of postings
+	 *
+	 * @return Number of documents in which the keyword occurs
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the document of a posting
+	 *
+	 * @param i Posting number, 0 being the highest frequency
+	 * @return Document id
+	 */
+	public int doc(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException("Posting " + i + " of " + size);
+		}
+		return docs[i];
+	}
+
+	/**
+	 * Returns the frequency of a posting
+	 *
+	 * @param i Posting number, 0 being the highest frequency
+	 * @return Number of occurrences of the keyword in the document
+	 */
+	public int frequency(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException("Posting " + i + " of " + size);
+		}
+		return freqs[i];
+	}
+
+	/**
+	 * Inserts a posting in order, after binary search for its position. A list with
+	 * appended postings is sorted first.
+	 *
+	 * @param doc Document id
+	 * @param freq Frequency of the keyword in the document
+	 */
+	public void insert(int doc, int freq) {
+		if (!sorted) {
+			sort();
+		}
+		int l = 0, r = size;
+		while (l < r) {
+			int m = (l + r) >>> 1;
+			if (before(docs[m], freqs[m], doc, freq)) {
+				l = m + 1;
+			} else {
+				r = m;
+			}
+		}
+		grow();
+		System.arraycopy(docs, l, docs, l + 1, size - l);
+		System.arraycopy(freqs, l, freqs, l + 1, size - l);
+		docs[l] = doc;
+		freqs[l] = freq;
+		size++;
+		byDoc = null;
+	}
+
+	/**
+	 * Returns a copy of the list with a posting inserted in order, as by insert, leaving
+	 * this list as it is. A list that other threads are reading can so be replaced by a
+	 * longer one instead of being changed under them. A posting that goes at the end - as
+	 * that of a new document with the lowest frequency does - is written to the spare room
+	 * in this list's arrays, which the new list shares, so only the first list made from
+	 * this one can be made in this way.
+	 *
+	 * @param doc Document id
+	 * @param freq Frequency of the keyword in the document
+	 * @return New list, with one more posting
+	 */
+	public PostingsList with(int doc, int freq) {
+		if (!sorted) {
+			PostingsList copy = new PostingsList(size + 1);
+			copy.addAll(this);
+			copy.insert(doc, freq);
+			return copy;
+		}
+		int l = 0, r = size;
+		while (l < r) {
+			int m = (l + r) >>> 1;
+			if (before(docs[m], freqs[m], doc, freq)) {
+				l = m + 1;
+			} else {
+				r = m;
+			}
+		}
+		if (l == size && !extended) {
+			extended = true;
+			PostingsList copy = new PostingsList(0);
+			copy.docs = docs;
+			copy.freqs = freqs;
+			copy.size = size;
+			// a full list's successor gets arrays of its own, with room to spare
+			copy.grow();
+			copy.docs[size] = doc;
+			copy.freqs[size] = freq;
+			copy.size++;
+			return copy;
+		}
+		// the copy keeps this list's spare room, so that postings can go on being added at the end
+		PostingsList copy = new PostingsList(Math.max(size + 1, docs.length));
+		System.arraycopy(docs, 0, copy.docs, 0, l);
+		System.arraycopy(freqs, 0, copy.freqs, 0, l);
+		System.arraycopy(docs, l, copy.docs, l + 1, size - l);
+		System.arraycopy(freqs, l, copy.freqs, l + 1, size - l);
+		copy.docs[l] = doc;
+		copy.freqs[l] = freq;
+		copy.size = size + 1;
+		return copy;
+	}
+
+	/**
+	 * Appends a posting at the end, out of order. The list must be sorted before it is
+	 * read again.
+	 *
+	 * @param doc Document id
+	 * @param freq Frequency of the keyword in the document
+	 */
+	public void append(int doc, int freq) {
+		grow();
+		docs[size] = doc;
+		freqs[size] = freq;
+		size++;
+		byDoc = null;
+		sorted = false;
+	}
+
+	/**
+	 * Appends all postings of another list at the end, out of order. The list must be
+	 * sorted before it is read again.
+	 *
+	 * @param other List whose postings to append
+	 */
+	public void addAll(PostingsList other) {
+		int n = size + other.size;
+		if (n > docs.length) {
+			docs = Arrays.copyOf(docs, Math.max(n, size * 2));
+			freqs = Arrays.copyOf(freqs, docs.length);
+		}
+		System.arraycopy(other.docs, 0, docs, size, other.size);
+		System.arraycopy(other.freqs, 0, freqs, size, other.size);
+		size = n;
+		byDoc = null;
+		sorted = false;
+	}
+
+	/**
+	 * Replaces the id of each posting's document d by ids[d]. The list must be sorted
+	 * before it is read again.
+	 *
+	 * @param ids New document ids, by old id
+	 */
+	void renumber(int[] ids) {
+		for (int i = 0; i < size; i++) {
+			docs[i] = ids[docs[i]];
+		}
+		byDoc = null;
+		sorted = false;
+	}
+
+	/**
+	 * Puts appended postings in order: DESCENDING frequency, then ascending document id
+	 */
+	public void sort() {
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = ((long) (Integer.MAX_VALUE - freqs[i]) << 32) | docs[i];
+		}
+		Arrays.sort(keys);
+		for (int i = 0; i < size; i++) {
+			docs[i] = (int) keys[i];
+			freqs[i] = Integer.MAX_VALUE - (int) (keys[i] >>> 32);
+		}
+		byDoc = null;
+		sorted = true;
+	}
+
+	/**
+	 * Whether the postings are in order, that is no posting has been appended since the
+	 * list was last sorted
+	 *
+	 * @return True if the list is in order
+	 */
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	/**
+	 * Whether posting (d1, f1) comes before posting (d2, f2)
+	 */
+	static boolean before(int d1, int f1, int d2, int f2) {
+		return f1 > f2 || (f1 == f2 && d1 < d2);
+	}
+
+	private void grow() {
+		if (size == docs.length) {
+			docs = Arrays.copyOf(docs, size * 2);
+			freqs = Arrays.copyOf(freqs, size * 2);
+		}
+	}
+
+	/**
+	 * Returns the frequency of the keyword in a document
+	 *
+	 * @param doc Document id
+	 * @return Frequency, 0 if the keyword does not occur in the document
+	 */
+	public int frequencyOf(int doc) {
+		int[] order = byDoc;
+		if (order == null) {
+			order = docOrder();
+			byDoc = order;
+		}
+		int l = 0, r = size - 1;
+		while (l <= r) {
+			int m = (l + r) >>> 1;
+			int d = docs[order[m]];
+			if (d < doc) {
+				l = m + 1;
+			} else if (d > doc) {
+				r = m - 1;
+			} else {
+				return freqs[order[m]];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Positions of the postings in ascending order of document id
+	 */
+	private int[] docOrder() {
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = ((long) docs[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Encodes the list compactly: the number of postings, then for each posting in
+	 * ascending order of document id the gap from the previous id and the frequency,
+	 * every number as a variable-length integer of 7 bits per byte
+	 *
+	 * @return Encoded postings
+	 */
+	public byte[] encode() {
+		int[] order = docOrder();
+		byte[] out = new byte[5 + size * 10];
+		int pos = putVarint(out, 0, size);
+		int prev = 0;
+		for (int i = 0; i < size; i++) {
+			int d = docs[order[i]];
+			pos = putVarint(out, pos, d - prev);
+			pos = putVarint(out, pos, freqs[order[i]]);
+			prev = d;
+		}
+		return Arrays.copyOf(out, pos);
+	}
+
+	/**
+	 * Decodes a list encoded by encode
+	 *
+	 * @param in Encoded postings
+	 * @return The postings list
+	 * @throws IllegalArgumentException If the input is not a valid encoding
+	 */
+	public static PostingsList decode(byte[] in) {
+		int[] pos = { 0 };
+		int n = getVarint(in, pos);
+		if (n < 0 || n > in.length / 2) {
+			throw new IllegalArgumentException("Malformed postings");
+		}
+		PostingsList list = new PostingsList(n);
+		int d = 0;
+		for (int i = 0; i < n; i++) {
+			d += getVarint(in, pos);
+			list.append(d, getVarint(in, pos));
+		}
+		list.sort();
+		return list;
+	}
+
+	static int putVarint(byte[] out, int pos, int v) {
+		while ((v & ~0x7f) != 0) {
+			out[pos++] = (byte) ((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out[pos++] = (byte) v;
+		return pos;
+	}
+
+	static int getVarint(byte[] in, int[] pos) {
+		int v = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (pos[0] >= in.length) {
+				throw new IllegalArgumentException("Truncated postings");
+			}
+			byte b = in[pos[0]++];
+			v |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return v;
+			}
+		}
+		throw new IllegalArgumentException("Malformed postings");
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append('(').append(docs[i]).append(',').append(freqs[i]).append(')');
+		}
+		return sb.append(']').toString();
+	}
+}
\ No newline at end of file
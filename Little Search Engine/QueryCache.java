@@ -0,0 +1,177 @@
+package lse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Results of recent searches of one index, and the time searches take. A result is cached
+ * under the normalized query - the keywords without repeats, in ascending order where
+ * that cannot change the result, with the other search arguments - and is stamped with the
+ * version of the index it was found in. When a search sees that the index has changed, the
+ * whole cache is dropped; a result put by a search that raced with the change is never
+ * returned, as its stamp is out of date.
+ *
+ */
+public final class QueryCache {
+
+	/**
+	 * Default number of results a cache holds
+	 */
+	public static final int CAPACITY = 4096;
+
+	/**
+	 * Default number of stripes of a cache, which bounds how many threads can use it at once
+	 */
+	public static final int STRIPES = 16;
+
+	/**
+	 * A normalized query
+	 */
+	private static final class Query {
+		final String[] keywords;
+		final boolean all;
+		final int k;
+		final Scoring scoring;
+		final int hash;
+
+		Query(List<String> keywords, boolean all, int k, Scoring scoring) {
+			LinkedHashSet<String> distinct = new LinkedHashSet<String>(keywords);
+			this.keywords = distinct.toArray(new String[distinct.size()]);
+			if (scoring != Scoring.MAX_FREQUENCY && this.keywords.length == 2) {
+				// only ties on the maximum frequency are broken by keyword order, and a sum
+				// of two weights is the same either way round, unlike a longer one
+				Arrays.sort(this.keywords);
+			}
+			this.all = all;
+			this.k = k;
+			this.scoring = scoring;
+			this.hash = ((Arrays.hashCode(this.keywords) * 31 + (all ? 1 : 0)) * 31 + k) * 31
+					+ scoring.hashCode();
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Query)) {
+				return false;
+			}
+			Query q = (Query) o;
+			return hash == q.hash && all == q.all && k == q.k && scoring == q.scoring
+					&& Arrays.equals(keywords, q.keywords);
+		}
+	}
+
+	/**
+	 * A cached result
+	 */
+	private static final class Result {
+		/**
+		 * Matching documents, null if there are none
+		 */
+		final String[] docs;
+
+		/**
+		 * Version of the index the result was found in
+		 */
+		final long version;
+
+		Result(String[] docs, long version) {
+			this.docs = docs;
+			this.version = version;
+		}
+	}
+
+	private final StripedCache<Query,Result> results;
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * Version of the index the cached results were found in
+	 */
+	private volatile long version;
+
+	/**
+	 * Initializes an empty cache of CAPACITY results in STRIPES stripes
+	 */
+	QueryCache() {
+		this(CAPACITY, STRIPES);
+	}
+
+	/**
+	 * Initializes an empty cache
+	 *
+	 * @param capacity Number of results the cache holds, 0 for none
+	 * @param stripes Number of stripes, which bounds how many threads can use the cache at once
+	 * @throws IllegalArgumentException If capacity is negative, or stripes is not between 1 and 65536
+	 */
+	QueryCache(int capacity, int stripes) {
+		results = new StripedCache<Query,Result>(capacity, stripes);
+	}
+
+	/**
+	 * Ranked search for a number of keywords, as Searcher.search, answered from the cache
+	 * if the same query has been made since the index last changed
+	 *
+	 * @param searcher Index to search
+	 * @param version Version of the index searcher reads, which must grow whenever the
+	 *        index changes
+	 * @return List of the best scoring matching documents, at most k of them, in descending order of
+	 *         score. If there are no matches, returns null.
+	 * @throws IllegalArgumentException If k is not positive
+	 */
+	ArrayList<String> search(Searcher searcher, long version, List<String> keywords, boolean all,
+			int k, Scoring scoring) {
+		long start = System.nanoTime();
+		if (k < 1) {
+			throw new IllegalArgumentException("Result size must be positive, not " + k);
+		}
+		if (version > this.version) {
+			synchronized (this) {
+				if (version > this.version) {
+					results.clear();
+					this.version = version;
+				}
+			}
+		}
+		Query query = new Query(keywords, all, k, scoring);
+		Result cached = results.get(query);
+		String[] docs;
+		if (cached != null && cached.version == version) {
+			docs = cached.docs;
+		} else {
+			ArrayList<String> found = searcher.search(keywords, all, k, scoring);
+			docs = found == null ? null : found.toArray(new String[found.size()]);
+			if (version == this.version) {
+				results.put(query, new Result(docs, version), 1);
+			}
+		}
+		ArrayList<String> result = docs == null ? null : new ArrayList<String>(Arrays.asList(docs));
+		latency.record(System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * Returns the cached results
+	 *
+	 * @return Cache of results by query, with its hit rate
+	 */
+	public StripedCache<?,?> results() {
+		return results;
+	}
+
+	/**
+	 * Returns the time searches have taken, cached or not
+	 *
+	 * @return Histogram of search times in nanoseconds
+	 */
+	public LatencyHistogram latency() {
+		return latency;
+	}
+
+	public String toString() {
+		return "results: " + results + "; " + latency;
+	}
+}
\ No newline at end of file
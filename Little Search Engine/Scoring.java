@@ -0,0 +1,109 @@
+package lse;
+
+/**
+ * Ways of scoring a document for the terms of a query. Each query term that occurs in
+ * the document contributes a weight computed from its frequency there, and the weights
+ * are combined into the document's score. A weight never falls as the frequency grows,
+ * which is what lets LittleSearchEngine.search stop reading frequency-ordered postings
+ * lists early.
+ *
+ */
+public enum Scoring {
+
+	/**
+	 * Highest frequency of any of the query terms in the document, the order of top5search
+	 */
+	MAX_FREQUENCY,
+
+	/**
+	 * Sum of the frequencies of the query terms in the document
+	 */
+	SUM,
+
+	/**
+	 * Sum over the query terms of frequency times log(1 + N/n), where N is the number of
+	 * documents and n the number of documents in which the term occurs
+	 */
+	TF_IDF,
+
+	/**
+	 * Okapi BM25, with parameters K1 and B
+	 */
+	BM25;
+
+	/**
+	 * BM25 term frequency saturation
+	 */
+	public static final double K1 = 1.2;
+
+	/**
+	 * BM25 document length normalization, from 0 (none) to 1 (full)
+	 */
+	public static final double B = 0.75;
+
+	/**
+	 * Returns the inverse document frequency of a term
+	 *
+	 * @param docFreq Number of documents in which the term occurs
+	 * @param numDocs Number of documents in the index
+	 * @return Factor by which the term's weights are scaled
+	 */
+	double idf(int docFreq, int numDocs) {
+		switch (this) {
+		case TF_IDF:
+			return Math.log(1 + (double) numDocs / docFreq);
+		case BM25:
+			return Math.log(1 + (numDocs - docFreq + 0.5) / (docFreq + 0.5));
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns the weight of a term in a document
+	 *
+	 * @param freq Frequency of the term in the document, at least 1
+	 * @param idf Inverse document frequency of the term
+	 * @param docLength Number of keywords in the document
+	 * @param avgLength Average number of keywords in a document
+	 * @return Weight of the term
+	 */
+	double weight(int freq, double idf, int docLength, double avgLength) {
+		switch (this) {
+		case TF_IDF:
+			return freq * idf;
+		case BM25:
+			double norm = avgLength > 0 ? 1 - B + B * docLength / avgLength : 1;
+			return idf * freq * (K1 + 1) / (freq + K1 * norm);
+		default:
+			return freq;
+		}
+	}
+
+	/**
+	 * Returns the highest weight a term can have in any document in which it occurs with
+	 * a given frequency
+	 *
+	 * @param freq Frequency of the term in the document, at least 1
+	 * @param idf Inverse document frequency of the term
+	 * @param minLength Number of keywords in the shortest document
+	 * @param avgLength Average number of keywords in a document
+	 * @return Upper bound on the term's weight
+	 */
+	double bound(int freq, double idf, int minLength, double avgLength) {
+		// the weight is highest for the shortest documents, and a document has at least
+		// as many keywords as the frequency of any one of them
+		return weight(freq, idf, Math.max(freq, minLength), avgLength);
+	}
+
+	/**
+	 * Combines a document's score so far with the weight of one more term
+	 *
+	 * @param score Score so far
+	 * @param weight Weight of the term
+	 * @return New score
+	 */
+	double combine(double score, double weight) {
+		return this == MAX_FREQUENCY ? Math.max(score, weight) : score + weight;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,242 @@
+package lse;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Ranked search over an index made of one or more segments, each numbering its documents
+ * from 0. Documents of earlier segments count as indexed before those of later ones, and
+ * a document that has been deleted from its segment is never returned.
+ *
+ */
+abstract class Searcher {
+
+	/**
+	 * Returns the number of segments
+	 */
+	abstract int segmentCount();
+
+	/**
+	 * Returns the postings of a keyword in a segment, null if the keyword is not in it
+	 */
+	abstract Postings postings(int segment, String keyword);
+
+	/**
+	 * Whether a document of a segment has been deleted
+	 */
+	abstract boolean isDeleted(int segment, int doc);
+
+	/**
+	 * Returns the number of keywords in a document of a segment
+	 */
+	abstract int docLength(int segment, int doc);
+
+	/**
+	 * Returns the name of a document of a segment
+	 */
+	abstract String document(int segment, int doc);
+
+	/**
+	 * Returns the number of documents that have not been deleted
+	 */
+	abstract int documentCount();
+
+	/**
+	 * Returns the number of keywords in all documents
+	 */
+	abstract long totalLength();
+
+	/**
+	 * Returns the number of keywords in the shortest document that has any, or less
+	 */
+	abstract int minLength();
+
+	/**
+	 * Ranked search for a number of keywords, as described for LittleSearchEngine.search.
+	 * With several segments, each segment's postings list of a keyword is read in step
+	 * with the others, and a document is scored from the lists of its own segment.
+	 *
+	 * @param keywords Keywords to search for
+	 * @param all True for documents that have all the keywords, false for any of them
+	 * @param k Largest number of documents to return
+	 * @param scoring How to score a document for the keywords
+	 * @return List of the best scoring matching documents, at most k of them, in descending order of
+	 *         score. If there are no matches, returns null.
+	 * @throws IllegalArgumentException If k is not positive
+	 */
+	ArrayList<String> search(List<String> keywords, boolean all, int k, Scoring scoring) {
+		if (k < 1) {
+			throw new IllegalArgumentException("Result size must be positive, not " + k);
+		}
+		int segments = segmentCount();
+		ArrayList<Postings[]> found = new ArrayList<Postings[]>();
+		for (String kw : new LinkedHashSet<String>(keywords)) {
+			Postings[] lists = new Postings[segments];
+			boolean any = false;
+			for (int s = 0; s < segments; s++) {
+				Postings postings = postings(s, kw);
+				if (postings != null && postings.size() > 0) {
+					lists[s] = postings;
+					any = true;
+				}
+			}
+			if (!any) {
+				if (all) {
+					return null;
+				}
+				continue;
+			}
+			found.add(lists);
+		}
+		int n = found.size();
+		if (n == 0) {
+			return null;
+		}
+		Postings[][] lists = found.toArray(new Postings[n][]);
+		int numDocs = documentCount();
+		double avgLength = numDocs == 0 ? 0 : (double) totalLength() / numDocs;
+		int minLength = minLength();
+		double[] idf = new double[n];
+		for (int t = 0; t < n; t++) {
+			int docFreq = 0;
+			for (int s = 0; s < segments; s++) {
+				docFreq += lists[t][s] == null ? 0 : lists[t][s].size();
+			}
+			// deleted documents still count in the lists until their segments are merged
+			idf[t] = scoring.idf(docFreq, Math.max(numDocs, docFreq));
+		}
+
+		// worst hit at the head
+		PriorityQueue<Hit> best = new PriorityQueue<Hit>(k + 1);
+		HashSet<Long> seen = new HashSet<Long>();
+		for (int row = 0; ; row++) {
+			for (int t = 0; t < n; t++) {
+				for (int s = 0; s < segments; s++) {
+					Postings postings = lists[t][s];
+					if (postings == null || row >= postings.size()) {
+						continue;
+					}
+					int doc = postings.doc(row);
+					if (!seen.add(((long) s << 32) | doc) || isDeleted(s, doc)) {
+						continue;
+					}
+					Hit hit = score(lists, s, doc, t, postings.frequency(row), idf, avgLength, all,
+							scoring);
+					if (hit == null) {
+						continue;
+					}
+					if (best.size() < k) {
+						best.add(hit);
+					} else if (hit.compareTo(best.peek()) > 0) {
+						best.poll();
+						best.add(hit);
+					}
+				}
+			}
+			// the best score a document not seen yet can have
+			double threshold = 0;
+			boolean more = false;
+			for (int t = 0; t < n; t++) {
+				double bound = 0;
+				boolean left = false;
+				for (int s = 0; s < segments; s++) {
+					Postings postings = lists[t][s];
+					if (postings != null && row + 1 < postings.size()) {
+						bound = Math.max(bound,
+								scoring.bound(postings.frequency(row + 1), idf[t], minLength, avgLength));
+						left = true;
+					}
+				}
+				if (left) {
+					threshold = scoring.combine(threshold, bound);
+					more = true;
+				} else if (all) {
+					// every document that has all the keywords is in these lists, and has been seen
+					more = false;
+					break;
+				}
+			}
+			if (!more || (best.size() == k && best.peek().score > threshold)) {
+				break;
+			}
+		}
+
+		if (best.isEmpty()) {
+			return null;
+		}
+		String[] docs = new String[best.size()];
+		for (int i = docs.length - 1; i >= 0; i--) {
+			Hit hit = best.poll();
+			docs[i] = document(hit.segment, hit.doc);
+		}
+		ArrayList<String> result = new ArrayList<String>(docs.length);
+		for (String doc : docs) {
+			result.add(doc);
+		}
+		return result;
+	}
+
+	/**
+	 * Scores a document against all the query keywords, given its frequency for keyword t
+	 *
+	 * @return Scored document, null if all is set and some keyword does not occur in it
+	 */
+	private Hit score(Postings[][] lists, int segment, int doc, int t, int freqT, double[] idf,
+			double avgLength, boolean all, Scoring scoring) {
+		double score = 0;
+		int first = -1;
+		for (int u = 0; u < lists.length; u++) {
+			Postings postings = lists[u][segment];
+			int freq = u == t ? freqT : postings == null ? 0 : postings.frequencyOf(doc);
+			if (freq == 0) {
+				if (all) {
+					return null;
+				}
+				continue;
+			}
+			double weight = scoring.weight(freq, idf[u], docLength(segment, doc), avgLength);
+			double combined = scoring.combine(score, weight);
+			if (first < 0 || (scoring == Scoring.MAX_FREQUENCY && combined > score)) {
+				first = u;
+			}
+			score = combined;
+		}
+		return new Hit(segment, doc, score, scoring == Scoring.MAX_FREQUENCY ? first : 0);
+	}
+
+	/**
+	 * A scored document. Hits compare in order of ranking, the better one being greater.
+	 */
+	private static final class Hit implements Comparable<Hit> {
+		final int segment, doc;
+		final double score;
+
+		/**
+		 * Index of the earliest keyword giving the document its score, for breaking ties
+		 */
+		final int keyword;
+
+		Hit(int segment, int doc, double score, int keyword) {
+			this.segment = segment;
+			this.doc = doc;
+			this.score = score;
+			this.keyword = keyword;
+		}
+
+		public int compareTo(Hit other) {
+			if (score != other.score) {
+				return score < other.score ? -1 : 1;
+			}
+			if (keyword != other.keyword) {
+				return keyword > other.keyword ? -1 : 1;
+			}
+			if (segment != other.segment) {
+				return segment > other.segment ? -1 : 1;
+			}
+			return doc > other.doc ? -1 : doc < other.doc ? 1 : 0;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,243 @@
+package lse;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A size-bounded cache that many threads can use at once. Keys are spread over a number
+ * of stripes by hash, each an access-ordered LinkedHashMap under its own lock, so threads
+ * only contend when their keys fall in the same stripe. Every entry has a weight, and a
+ * stripe evicts its least recently used entries once their weights add up to more than
+ * its share of the capacity.
+ *
+ */
+public final class StripedCache<K,V> {
+
+	/**
+	 * A cached value and its weight
+	 */
+	private static final class Entry<V> {
+		final V value;
+		final long weight;
+
+		Entry(V value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * One stripe of the cache. All fields are guarded by the stripe.
+	 */
+	private static final class Stripe<K,V> {
+		final LinkedHashMap<K,Entry<V>> entries = new LinkedHashMap<K,Entry<V>>(16, 0.75f, true);
+		long weight;
+		long hits, misses, evictions;
+	}
+
+	private final Stripe<K,V>[] stripes;
+	private final int mask;
+
+	/**
+	 * Largest total weight of a stripe's entries
+	 */
+	private final long stripeCapacity;
+
+	/**
+	 * Initializes an empty cache
+	 *
+	 * @param capacity Largest total weight of the entries held; 0 for a cache that holds nothing
+	 * @param stripes Number of stripes, rounded up to a power of 2
+	 * @throws IllegalArgumentException If the capacity is negative or stripes is not positive
+	 */
+	@SuppressWarnings("unchecked")
+	public StripedCache(long capacity, int stripes) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity must not be negative, not " + capacity);
+		}
+		if (stripes < 1 || stripes > 1 << 16) {
+			throw new IllegalArgumentException("Bad number of stripes: " + stripes);
+		}
+		int n = Integer.highestOneBit(stripes);
+		if (n < stripes) {
+			n *= 2;
+		}
+		this.stripes = (Stripe<K,V>[]) new Stripe<?,?>[n];
+		for (int i = 0; i < n; i++) {
+			this.stripes[i] = new Stripe<K,V>();
+		}
+		mask = n - 1;
+		stripeCapacity = (capacity + n - 1) / n;
+	}
+
+	private Stripe<K,V> stripe(Object key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		return stripes[(h * 0x9e3779b9 >>> 16) & mask];
+	}
+
+	/**
+	 * Returns the value cached for a key, making it the most recently used
+	 *
+	 * @param key Key
+	 * @return Cached value, null if none is cached
+	 */
+	public V get(K key) {
+		Stripe<K,V> s = stripe(key);
+		synchronized (s) {
+			Entry<V> e = s.entries.get(key);
+			if (e == null) {
+				s.misses++;
+				return null;
+			}
+			s.hits++;
+			return e.value;
+		}
+	}
+
+	/**
+	 * Caches a value for a key, replacing any value cached for it, and evicts the least
+	 * recently used entries of the key's stripe while the stripe is over capacity. A value
+	 * heavier than a stripe's share of the capacity is not cached.
+	 *
+	 * @param key Key
+	 * @param value Value, not null
+	 * @param weight Weight of the entry, such as its size
+	 * @throws IllegalArgumentException If the weight is negative
+	 */
+	public void put(K key, V value, long weight) {
+		if (weight < 0) {
+			throw new IllegalArgumentException("Weight must not be negative, not " + weight);
+		}
+		Stripe<K,V> s = stripe(key);
+		synchronized (s) {
+			if (weight > stripeCapacity) {
+				Entry<V> old = s.entries.remove(key);
+				if (old != null) {
+					s.weight -= old.weight;
+				}
+				return;
+			}
+			Entry<V> old = s.entries.put(key, new Entry<V>(value, weight));
+			s.weight += weight - (old == null ? 0 : old.weight);
+			Iterator<Entry<V>> it = s.entries.values().iterator();
+			while (s.weight > stripeCapacity) {
+				Entry<V> eldest = it.next();
+				it.remove();
+				s.weight -= eldest.weight;
+				s.evictions++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the largest weight of a value that can be cached
+	 *
+	 * @return A stripe's share of the capacity
+	 */
+	public long maxWeight() {
+		return stripeCapacity;
+	}
+
+	/**
+	 * Removes all entries. Counters are not reset.
+	 */
+	public void clear() {
+		for (Stripe<K,V> s : stripes) {
+			synchronized (s) {
+				s.entries.clear();
+				s.weight = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of entries held
+	 *
+	 * @return Number of cached values
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe<K,V> s : stripes) {
+			synchronized (s) {
+				size += s.entries.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the total weight of the entries held
+	 *
+	 * @return Sum of the weights of the cached values
+	 */
+	public long weight() {
+		long weight = 0;
+		for (Stripe<K,V> s : stripes) {
+			synchronized (s) {
+				weight += s.weight;
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * Returns the number of lookups that found a value
+	 *
+	 * @return Hit count
+	 */
+	public long hits() {
+		long hits = 0;
+		for (Stripe<K,V> s : stripes) {
+			synchronized (s) {
+				hits += s.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that found no value
+	 *
+	 * @return Miss count
+	 */
+	public long misses() {
+		long misses = 0;
+		for (Stripe<K,V> s : stripes) {
+			synchronized (s) {
+				misses += s.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * Returns the number of entries evicted to make room
+	 *
+	 * @return Eviction count
+	 */
+	public long evictions() {
+		long evictions = 0;
+		for (Stripe<K,V> s : stripes) {
+			synchronized (s) {
+				evictions += s.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	/**
+	 * Returns the fraction of lookups that found a value
+	 *
+	 * @return Hit rate, 0 if there have been no lookups
+	 */
+	public double hitRate() {
+		long hits = hits(), lookups = hits + misses();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public String toString() {
+		return String.format("%d entries, weight %d, hit rate %.3f, %d evictions", size(), weight(),
+				hitRate(), evictions());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,486 @@
+package poly;
+
+import java.util.Arrays;
+
+/**
+ * A polynomial stored as two parallel arrays, degrees and coefficients, in ascending
+ * order of degree with no zero coefficients. This is the same term order as the linked
+ * lists built by Polynomial.read, without a node and a term object per term, and all
+ * operations are iterative. Coefficients are doubles; conversion to the linked list form
+ * rounds them to float. Instances are immutable.
+ *
+ */
+public final class ArrayPolynomial {
+
+	/**
+	 * The zero polynomial
+	 */
+	public static final ArrayPolynomial ZERO = new ArrayPolynomial(new int[0], new double[0], 0);
+
+	/**
+	 * Degrees of the terms, ascending
+	 */
+	final int[] degrees;
+
+	/**
+	 * Coefficients of the terms, none zero
+	 */
+	final double[] coeffs;
+
+	/**
+	 * Number of terms
+	 */
+	final int size;
+
+	/**
+	 * Initializes a polynomial from term arrays that are already in ascending order of
+	 * degree with no zero coefficients. The arrays are not copied.
+	 */
+	ArrayPolynomial(int[] degrees, double[] coeffs, int size) {
+		this.degrees = degrees;
+		this.coeffs = coeffs;
+		this.size = size;
+	}
+
+	/**
+	 * Builds a polynomial from terms in any order. Terms of equal degree are added
+	 * together, and terms that end up with a zero coefficient are dropped.
+	 *
+	 * @param degrees Degree of each term
+	 * @param coeffs Coefficient of each term
+	 * @return Polynomial
+	 * @throws IllegalArgumentException If the arrays differ in length or a degree is negative
+	 */
+	public static ArrayPolynomial of(int[] degrees, double[] coeffs) {
+		if (degrees.length != coeffs.length) {
+			throw new IllegalArgumentException("Degree and coefficient arrays differ in length");
+		}
+		return normalize(degrees.clone(), coeffs.clone(), degrees.length);
+	}
+
+	/**
+	 * Sorts terms held in the given arrays, merging equal degrees and dropping zeros. The
+	 * arrays are reused for the result.
+	 */
+	static ArrayPolynomial normalize(int[] degrees, double[] coeffs, int n) {
+		int[] order = sortOrder(degrees, n);
+		if (order != null) {
+			int[] d = new int[n];
+			double[] c = new double[n];
+			for (int i = 0; i < n; i++) {
+				d[i] = degrees[order[i]];
+				c[i] = coeffs[order[i]];
+			}
+			degrees = d;
+			coeffs = c;
+		}
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			if (k > 0 && degrees[k - 1] == degrees[i]) {
+				coeffs[k - 1] += coeffs[i];
+			} else {
+				if (k > 0 && coeffs[k - 1] == 0) {
+					k--;
+				}
+				degrees[k] = degrees[i];
+				coeffs[k] = coeffs[i];
+				k++;
+			}
+		}
+		if (k > 0 && coeffs[k - 1] == 0) {
+			k--;
+		}
+		return new ArrayPolynomial(degrees, coeffs, k);
+	}
+
+	/**
+	 * Returns the positions of the first n degrees in ascending order of degree, equal
+	 * degrees in their original order. Shared by the polynomial types of every
+	 * coefficient ring.
+	 *
+	 * @return Sorted positions, null if the degrees are already strictly ascending
+	 * @throws IllegalArgumentException If a degree is negative
+	 */
+	static int[] sortOrder(int[] degrees, int n) {
+		boolean sorted = true;
+		for (int i = 0; i < n; i++) {
+			if (degrees[i] < 0) {
+				throw new IllegalArgumentException("Negative degree " + degrees[i]);
+			}
+			if (i > 0 && degrees[i] <= degrees[i - 1]) {
+				sorted = false;
+			}
+		}
+		if (sorted) {
+			return null;
+		}
+		// sort by degree through packed (degree, index) keys
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = ((long) degrees[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Converts a polynomial from its linked list form
+	 *
+	 * @param poly Polynomial (front of linked list)
+	 * @return Array form of the polynomial
+	 */
+	public static ArrayPolynomial fromNode(Node poly) {
+		int n = 0;
+		for (Node ptr = poly; ptr != null; ptr = ptr.next) {
+			n++;
+		}
+		int[] degrees = new int[n];
+		double[] coeffs = new double[n];
+		int i = 0;
+		for (Node ptr = poly; ptr != null; ptr = ptr.next) {
+			degrees[i] = ptr.term.degree;
+			coeffs[i] = ptr.term.coeff;
+			i++;
+		}
+		return normalize(degrees, coeffs, n);
+	}
+
+	/**
+	 * Converts this polynomial to linked list form, in ascending order of degree.
+	 * Coefficients are rounded to float, and terms that round to zero are dropped.
+	 *
+	 * @return Polynomial (front of linked list), null for the zero polynomial
+	 */
+	public Node toNode() {
+		Node poly = null;
+		for (int i = size - 1; i >= 0; i--) {
+			float coeff = (float) coeffs[i];
+			if (coeff != 0) {
+				poly = new Node(coeff, degrees[i], poly);
+			}
+		}
+		return poly;
+	}
+
+	/**
+	 * Builds a polynomial from dense coefficients
+	 *
+	 * @param coeffs Coefficient of each degree, coeffs[d] for x^d
+	 * @return Polynomial
+	 */
+	public static ArrayPolynomial fromDense(double[] coeffs) {
+		int n = 0;
+		for (double c : coeffs) {
+			if (c != 0) {
+				n++;
+			}
+		}
+		int[] d = new int[n];
+		double[] c = new double[n];
+		int k = 0;
+		for (int i = 0; i < coeffs.length; i++) {
+			if (coeffs[i] != 0) {
+				d[k] = i;
+				c[k++] = coeffs[i];
+			}
+		}
+		return new ArrayPolynomial(d, c, n);
+	}
+
+	/**
+	 * Returns the dense coefficients of this polynomial
+	 *
+	 * @return Coefficient of each degree from 0 to degree(), coeffs[d] for x^d
+	 */
+	public double[] toDense() {
+		double[] dense = new double[degree() + 1];
+		for (int i = 0; i < size; i++) {
+			dense[degrees[i]] = coeffs[i];
+		}
+		return dense;
+	}
+
+	/**
+	 * Returns the number of terms with non-zero coefficients
+	 *
+	 * @return Number of terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the degree of this polynomial
+	 *
+	 * @return Highest degree of a term, -1 for the zero polynomial
+	 */
+	public int degree() {
+		return size == 0 ? -1 : degrees[size - 1];
+	}
+
+	/**
+	 * Returns the degree of a term
+	 *
+	 * @param i Index of the term, in ascending order of degree
+	 * @return Degree of the term
+	 */
+	public int degreeAt(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException(String.valueOf(i));
+		}
+		return degrees[i];
+	}
+
+	/**
+	 * Returns the coefficient of a term
+	 *
+	 * @param i Index of the term, in ascending order of degree
+	 * @return Coefficient of the term
+	 */
+	public double coeffAt(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException(String.valueOf(i));
+		}
+		return coeffs[i];
+	}
+
+	/**
+	 * Returns the sum of two polynomials
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return Sum of the polynomials
+	 */
+	public static ArrayPolynomial add(ArrayPolynomial p1, ArrayPolynomial p2) {
+		int[] d = new int[p1.size + p2.size];
+		double[] c = new double[p1.size + p2.size];
+		int i = 0, j = 0, k = 0;
+		while (i < p1.size && j < p2.size) {
+			if (p1.degrees[i] < p2.degrees[j]) {
+				d[k] = p1.degrees[i];
+				c[k++] = p1.coeffs[i++];
+			} else if (p1.degrees[i] > p2.degrees[j]) {
+				d[k] = p2.degrees[j];
+				c[k++] = p2.coeffs[j++];
+			} else {
+				double sum = p1.coeffs[i] + p2.coeffs[j];
+				if (sum != 0) {
+					d[k] = p1.degrees[i];
+					c[k++] = sum;
+				}
+				i++;
+				j++;
+			}
+		}
+		for (; i < p1.size; i++, k++) {
+			d[k] = p1.degrees[i];
+			c[k] = p1.coeffs[i];
+		}
+		for (; j < p2.size; j++, k++) {
+			d[k] = p2.degrees[j];
+			c[k] = p2.coeffs[j];
+		}
+		return new ArrayPolynomial(d, c, k);
+	}
+
+	/**
+	 * Returns the product of two polynomials, multiplied by PolynomialMultiplier
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return Product of the polynomials
+	 */
+	public static ArrayPolynomial multiply(ArrayPolynomial p1, ArrayPolynomial p2) {
+		return PolynomialMultiplier.DEFAULT.multiply(p1, p2);
+	}
+
+	/**
+	 * Multiplies term by term. When the product's degree range is small compared to the
+	 * number of term products, the products are accumulated in a dense array; otherwise
+	 * the rows p1[i]*p2 are merged in order of degree through a heap.
+	 */
+	static ArrayPolynomial multiplySparse(ArrayPolynomial p1, ArrayPolynomial p2) {
+		if (p1.size == 0 || p2.size == 0) {
+			return ZERO;
+		}
+		long span = (long) p1.degree() + p2.degree() - p1.degrees[0] - p2.degrees[0] + 1;
+		if (span <= 4L * p1.size * p2.size && span <= Integer.MAX_VALUE - 8) {
+			return multiplyDense(p1, p2);
+		}
+		// merge the shorter operand's rows
+		return p1.size <= p2.size ? multiplyHeap(p1, p2) : multiplyHeap(p2, p1);
+	}
+
+	/**
+	 * Multiplies by accumulating all term products in a dense array indexed by degree
+	 */
+	static ArrayPolynomial multiplyDense(ArrayPolynomial p1, ArrayPolynomial p2) {
+		int low = p1.degrees[0] + p2.degrees[0];
+		double[] acc = new double[p1.degree() + p2.degree() - low + 1];
+		for (int i = 0; i < p1.size; i++) {
+			double c = p1.coeffs[i];
+			int base = p1.degrees[i] - low;
+			for (int j = 0; j < p2.size; j++) {
+				acc[base + p2.degrees[j]] += c * p2.coeffs[j];
+			}
+		}
+		return fromDense(acc, low);
+	}
+
+	/**
+	 * Builds a polynomial from dense coefficients of the degrees low, low+1, ...
+	 */
+	static ArrayPolynomial fromDense(double[] acc, int low) {
+		int n = 0;
+		for (double c : acc) {
+			if (c != 0) {
+				n++;
+			}
+		}
+		int[] d = new int[n];
+		double[] c = new double[n];
+		int k = 0;
+		for (int i = 0; i < acc.length; i++) {
+			if (acc[i] != 0) {
+				d[k] = low + i;
+				c[k++] = acc[i];
+			}
+		}
+		return new ArrayPolynomial(d, c, n);
+	}
+
+	/**
+	 * Multiplies by merging the rows rows[i]*other, each already in ascending order of
+	 * degree, through a binary heap keyed on the degree of each row's next product
+	 */
+	static ArrayPolynomial multiplyHeap(ArrayPolynomial rows, ArrayPolynomial other) {
+		int n = rows.size;
+		int[] next = new int[n]; // next column of each row
+		int[] heap = new int[n]; // row numbers
+		long[] key = new long[n]; // degree of each heap entry's next product
+		int hs = 0;
+		for (int i = 0; i < n; i++) {
+			key[hs] = (long) rows.degrees[i] + other.degrees[0];
+			heap[hs] = i;
+			siftUp(heap, key, hs++);
+		}
+		int cap = Math.max(16, Math.min(n * other.size, 1 << 20));
+		int[] d = new int[cap];
+		double[] c = new double[cap];
+		int k = 0;
+		while (hs > 0) {
+			int row = heap[0];
+			long deg = key[0];
+			double product = rows.coeffs[row] * other.coeffs[next[row]];
+			if (k > 0 && d[k - 1] == deg) {
+				c[k - 1] += product;
+			} else {
+				if (k > 0 && c[k - 1] == 0) {
+					k--;
+				}
+				if (k == d.length) {
+					d = Arrays.copyOf(d, k * 2);
+					c = Arrays.copyOf(c, k * 2);
+				}
+				d[k] = (int) deg;
+				c[k++] = product;
+			}
+			if (++next[row] < other.size) {
+				key[0] = (long) rows.degrees[row] + other.degrees[next[row]];
+			} else {
+				hs--;
+				heap[0] = heap[hs];
+				key[0] = key[hs];
+			}
+			siftDown(heap, key, 0, hs);
+		}
+		if (k > 0 && c[k - 1] == 0) {
+			k--;
+		}
+		return new ArrayPolynomial(d, c, k);
+	}
+
+	static void siftUp(int[] heap, long[] key, int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (key[parent] <= key[i]) {
+				break;
+			}
+			swap(heap, key, i, parent);
+			i = parent;
+		}
+	}
+
+	static void siftDown(int[] heap, long[] key, int i, int n) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= n) {
+				break;
+			}
+			if (child + 1 < n && key[child + 1] < key[child]) {
+				child++;
+			}
+			if (key[i] <= key[child]) {
+				break;
+			}
+			swap(heap, key, i, child);
+			i = child;
+		}
+	}
+
+	private static void swap(int[] heap, long[] key, int i, int j) {
+		int h = heap[i];
+		heap[i] = heap[j];
+		heap[j] = h;
+		long k = key[i];
+		key[i] = key[j];
+		key[j] = k;
+	}
+
+	/**
+	 * Evaluates a polynomial at a given value by Horner's rule, stepping over the gaps
+	 * between the degrees of consecutive terms with powers of x
+	 *
+	 * @param p Polynomial to be evaluated
+	 * @param x Value at which evaluation is to be done
+	 * @return Value of polynomial p at x
+	 */
+	public static double evaluate(ArrayPolynomial p, double x) {
+		if (p.size == 0) {
+			return 0;
+		}
+		double acc = p.coeffs[p.size - 1];
+		for (int i = p.size - 2; i >= 0; i--) {
+			int gap = p.degrees[i + 1] - p.degrees[i];
+			acc = acc * (gap == 1 ? x : pow(x, gap)) + p.coeffs[i];
+		}
+		return p.degrees[0] == 0 ? acc : acc * pow(x, p.degrees[0]);
+	}
+
+	/**
+	 * Returns x^n by repeated squaring
+	 */
+	static double pow(double x, int n) {
+		double result = 1;
+		while (n > 0) {
+			if ((n & 1) != 0) {
+				result *= x;
+			}
+			x *= x;
+			n >>>= 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns string representation of this polynomial, in descending order of degrees
+	 * as Polynomial.toString does
+	 */
+	public String toString() {
+		return Polynomial.toString(toNode());
+	}
+}
\ No newline at end of file
@@ -0,0 +1,567 @@
+package poly;
+
+import java.util.Arrays;
+
+/**
+ * A polynomial with integer coefficients modulo p, held as primitive longs in [0, p).
+ * Terms are stored as in ArrayPolynomial - parallel arrays in ascending order of degree
+ * with no zero coefficients - and arithmetic is exact. The modulus must be below 2^31
+ * so that the product of two coefficients fits in a long; it must be prime for the
+ * operations that divide. Instances are immutable.
+ *
+ * Dense products are computed by number theoretic transform, directly when p is one of
+ * the NTT_PRIMES and otherwise modulo all three of them, recombined by the Chinese
+ * remainder theorem.
+ *
+ */
+public final class ModularPolynomial {
+
+	/**
+	 * Primes of the form c*2^k+1 with primitive root 3, for which transforms of length up
+	 * to 2^k exist
+	 */
+	public static final long[] NTT_PRIMES = { 998244353, 167772161, 469762049 };
+
+	/**
+	 * Exponent k of the largest power of two dividing each NTT prime minus one
+	 */
+	static final int[] NTT_ORDERS = { 23, 25, 26 };
+
+	/**
+	 * Default number of terms of the shorter operand below which dense products are
+	 * multiplied term by term
+	 */
+	public static final int NTT_THRESHOLD = 64;
+
+	final long p;
+
+	/**
+	 * Degrees of the terms, ascending
+	 */
+	final int[] degrees;
+
+	/**
+	 * Coefficients of the terms, in [1, p)
+	 */
+	final long[] coeffs;
+
+	/**
+	 * Number of terms
+	 */
+	final int size;
+
+	ModularPolynomial(long p, int[] degrees, long[] coeffs, int size) {
+		this.p = p;
+		this.degrees = degrees;
+		this.coeffs = coeffs;
+		this.size = size;
+	}
+
+	private static void checkModulus(long p) {
+		if (p < 2 || p >= 1L << 31) {
+			throw new IllegalArgumentException("Modulus " + p + " not in [2, 2^31)");
+		}
+	}
+
+	/**
+	 * Returns the zero polynomial modulo p
+	 *
+	 * @param p Modulus
+	 * @return The zero polynomial
+	 */
+	public static ModularPolynomial zero(long p) {
+		checkModulus(p);
+		return new ModularPolynomial(p, new int[0], new long[0], 0);
+	}
+
+	/**
+	 * Builds a polynomial from terms in any order. Coefficients are reduced modulo p,
+	 * terms of equal degree are added together, and terms that end up zero are dropped.
+	 *
+	 * @param p Modulus
+	 * @param degrees Degree of each term
+	 * @param coeffs Coefficient of each term, any sign
+	 * @return Polynomial
+	 * @throws IllegalArgumentException If the arrays differ in length, a degree is negative,
+	 *         or the modulus is not in [2, 2^31)
+	 */
+	public static ModularPolynomial of(long p, int[] degrees, long[] coeffs) {
+		checkModulus(p);
+		if (degrees.length != coeffs.length) {
+			throw new IllegalArgumentException("Degree and coefficient arrays differ in length");
+		}
+		long[] c = new long[coeffs.length];
+		for (int i = 0; i < c.length; i++) {
+			c[i] = Math.floorMod(coeffs[i], p);
+		}
+		return new Terms(p).normalize(degrees.clone(), c, c.length);
+	}
+
+	/**
+	 * Reduces a polynomial with integer coefficients modulo p
+	 *
+	 * @param p Modulus
+	 * @param a Polynomial whose coefficients are all integers
+	 * @return Polynomial modulo p
+	 * @throws IllegalArgumentException If a coefficient is not an integer of at most 63 bits
+	 */
+	public static ModularPolynomial of(long p, ArrayPolynomial a) {
+		long[] c = new long[a.size];
+		for (int i = 0; i < a.size; i++) {
+			double v = a.coeffs[i];
+			if (v != Math.rint(v) || Math.abs(v) >= 0x1p63) {
+				throw new IllegalArgumentException("Coefficient " + v + " is not a long integer");
+			}
+			c[i] = (long) v;
+		}
+		return of(p, Arrays.copyOf(a.degrees, a.size), c);
+	}
+
+	/**
+	 * Builds a polynomial from dense coefficients already in [0, p)
+	 */
+	static ModularPolynomial fromDense(long p, long[] acc, int low) {
+		return new Terms(p).fromDense(acc, acc.length, low);
+	}
+
+	/**
+	 * Returns the dense coefficients of this polynomial
+	 *
+	 * @return Coefficient of each degree from 0 to degree(), coeffs[d] for x^d
+	 */
+	public long[] toDense() {
+		long[] dense = new long[degree() + 1];
+		for (int i = 0; i < size; i++) {
+			dense[degrees[i]] = coeffs[i];
+		}
+		return dense;
+	}
+
+	/**
+	 * Returns this polynomial with its coefficients, in [0, p), as doubles
+	 *
+	 * @return Polynomial with the same integer coefficients
+	 */
+	public ArrayPolynomial toArrayPolynomial() {
+		double[] c = new double[size];
+		for (int i = 0; i < size; i++) {
+			c[i] = coeffs[i];
+		}
+		return new ArrayPolynomial(Arrays.copyOf(degrees, size), c, size);
+	}
+
+	/**
+	 * Returns the modulus
+	 *
+	 * @return Modulus p
+	 */
+	public long modulus() {
+		return p;
+	}
+
+	/**
+	 * Returns the number of terms
+	 *
+	 * @return Number of non-zero terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the degree of the polynomial
+	 *
+	 * @return Highest degree with a non-zero coefficient, -1 for the zero polynomial
+	 */
+	public int degree() {
+		return size == 0 ? -1 : degrees[size - 1];
+	}
+
+	/**
+	 * Returns the degree of a term
+	 *
+	 * @param i Term number, 0 being the lowest degree
+	 * @return Degree of term i
+	 */
+	public int degreeAt(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException("Term " + i + " of " + size);
+		}
+		return degrees[i];
+	}
+
+	/**
+	 * Returns the coefficient of a term
+	 *
+	 * @param i Term number, 0 being the lowest degree
+	 * @return Coefficient of term i, in [1, p)
+	 */
+	public long coeffAt(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException("Term " + i + " of " + size);
+		}
+		return coeffs[i];
+	}
+
+	private static void check(ModularPolynomial p1, ModularPolynomial p2) {
+		if (p1.p != p2.p) {
+			throw new IllegalArgumentException("Moduli differ: " + p1.p + " and " + p2.p);
+		}
+	}
+
+	/**
+	 * Returns the sum of two polynomials with the same modulus
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return Sum of the polynomials
+	 */
+	public static ModularPolynomial add(ModularPolynomial p1, ModularPolynomial p2) {
+		check(p1, p2);
+		return new Terms(p1.p).add(p1, p2);
+	}
+
+	/**
+	 * Returns the negation of a polynomial
+	 *
+	 * @param a Polynomial
+	 * @return -a
+	 */
+	public static ModularPolynomial negate(ModularPolynomial a) {
+		long[] c = new long[a.size];
+		for (int i = 0; i < a.size; i++) {
+			c[i] = a.p - a.coeffs[i];
+		}
+		return new ModularPolynomial(a.p, Arrays.copyOf(a.degrees, a.size), c, a.size);
+	}
+
+	/**
+	 * Returns the difference of two polynomials with the same modulus
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return p1 - p2
+	 */
+	public static ModularPolynomial subtract(ModularPolynomial p1, ModularPolynomial p2) {
+		return add(p1, negate(p2));
+	}
+
+	/**
+	 * Returns the product of two polynomials with the same modulus. Sparse operands, or a
+	 * short operand, are multiplied term by term; dense ones by NTT.
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return Product of the polynomials
+	 */
+	public static ModularPolynomial multiply(ModularPolynomial p1, ModularPolynomial p2) {
+		return multiply(p1, p2, NTT_THRESHOLD);
+	}
+
+	/**
+	 * Returns the product of two polynomials with the same modulus, as multiply, with the
+	 * operand length from which dense operands are multiplied by NTT
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @param nttThreshold Number of terms of the shorter operand below which dense products
+	 *        are multiplied term by term
+	 * @return Product of the polynomials
+	 */
+	public static ModularPolynomial multiply(ModularPolynomial p1, ModularPolynomial p2, int nttThreshold) {
+		check(p1, p2);
+		if (p1.size == 0 || p2.size == 0) {
+			return zero(p1.p);
+		}
+		if (Math.min(p1.size, p2.size) < nttThreshold
+				|| density(p1) < PolynomialMultiplier.DEFAULT_SPARSE_DENSITY
+				|| density(p2) < PolynomialMultiplier.DEFAULT_SPARSE_DENSITY) {
+			return new Terms(p1.p).multiply(p1, p2);
+		}
+		int low1 = p1.degrees[0], low2 = p2.degrees[0];
+		long[] a = new long[p1.degree() - low1 + 1];
+		long[] b = new long[p2.degree() - low2 + 1];
+		for (int i = 0; i < p1.size; i++) {
+			a[p1.degrees[i] - low1] = p1.coeffs[i];
+		}
+		for (int i = 0; i < p2.size; i++) {
+			b[p2.degrees[i] - low2] = p2.coeffs[i];
+		}
+		return fromDense(p1.p, multiply(a, b, p1.p), low1 + low2);
+	}
+
+	private static double density(ModularPolynomial a) {
+		return a.size / (double) (a.degree() - a.degrees[0] + 1);
+	}
+
+	/**
+	 * Returns the product of two dense coefficient arrays modulo p
+	 *
+	 * @param a Coefficients of the first polynomial, in [0, p)
+	 * @param b Coefficients of the second polynomial, in [0, p)
+	 * @param p Modulus, below 2^31
+	 * @return Coefficients of the product, of length a.length+b.length-1
+	 */
+	public static long[] multiply(long[] a, long[] b, long p) {
+		if (a.length == 0 || b.length == 0) {
+			return new long[0];
+		}
+		int need = a.length + b.length - 1;
+		int n = Integer.highestOneBit(need);
+		if (n < need) {
+			n <<= 1;
+		}
+		int log = Integer.numberOfTrailingZeros(n);
+		for (int i = 0; i < NTT_PRIMES.length; i++) {
+			if (NTT_PRIMES[i] == p && log <= NTT_ORDERS[i]) {
+				return convolve(a, b, p, n, need);
+			}
+		}
+		if (log > NTT_ORDERS[0]) {
+			// too long for all three primes: multiply term by term
+			long[] acc = new long[need];
+			for (int i = 0; i < a.length; i++) {
+				for (int j = 0; j < b.length; j++) {
+					acc[i + j] = (acc[i + j] + a[i] * b[j]) % p;
+				}
+			}
+			return acc;
+		}
+		// each coefficient of the true product is below min(n,m)*p^2 < 2^85, so it is
+		// determined by its residues modulo the three primes, whose product exceeds 2^86
+		long m1 = NTT_PRIMES[0], m2 = NTT_PRIMES[1], m3 = NTT_PRIMES[2];
+		long[] r1 = convolve(a, b, m1, n, need);
+		long[] r2 = convolve(a, b, m2, n, need);
+		long[] r3 = convolve(a, b, m3, n, need);
+		long inv1 = inverse(m1 % m2, m2);
+		long inv12 = inverse(m1 % m3 * (m2 % m3) % m3, m3);
+		long m12 = m1 % p * (m2 % p) % p;
+		long[] c = r1;
+		for (int i = 0; i < need; i++) {
+			// Garner: x = r1 + m1*t1 + m1*m2*t2
+			long t1 = Math.floorMod(r2[i] - r1[i], m2) * inv1 % m2;
+			long x12 = r1[i] + m1 * t1;
+			long t2 = Math.floorMod(r3[i] - x12 % m3, m3) * inv12 % m3;
+			c[i] = (x12 % p + m12 * t2) % p;
+		}
+		return c;
+	}
+
+	/**
+	 * Cyclic convolution of length n modulo an NTT prime, truncated to need coefficients
+	 */
+	private static long[] convolve(long[] a, long[] b, long mod, int n, int need) {
+		long[] fa = new long[n], fb = new long[n];
+		for (int i = 0; i < a.length; i++) {
+			fa[i] = a[i] % mod;
+		}
+		for (int i = 0; i < b.length; i++) {
+			fb[i] = b[i] % mod;
+		}
+		ntt(fa, mod, false);
+		ntt(fb, mod, false);
+		for (int i = 0; i < n; i++) {
+			fa[i] = fa[i] * fb[i] % mod;
+		}
+		ntt(fa, mod, true);
+		return need == n ? fa : Arrays.copyOf(fa, need);
+	}
+
+	/**
+	 * In-place iterative radix-2 number theoretic transform modulo an NTT prime, with
+	 * primitive root 3; the inverse transform is scaled by 1/n
+	 */
+	private static void ntt(long[] a, long mod, boolean inverse) {
+		int n = a.length;
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if (i < j) {
+				long t = a[i];
+				a[i] = a[j];
+				a[j] = t;
+			}
+		}
+		long[] w = new long[Math.max(n / 2, 1)];
+		for (int len = 2; len <= n; len <<= 1) {
+			int half = len / 2;
+			long root = pow(3, (mod - 1) / len, mod);
+			if (inverse) {
+				root = inverse(root, mod);
+			}
+			w[0] = 1;
+			for (int j = 1; j < half; j++) {
+				w[j] = w[j - 1] * root % mod;
+			}
+			for (int i = 0; i < n; i += len) {
+				for (int j = 0; j < half; j++) {
+					int u = i + j, v = u + half;
+					long x = a[u], y = a[v] * w[j] % mod;
+					a[u] = x + y < mod ? x + y : x + y - mod;
+					a[v] = x - y >= 0 ? x - y : x - y + mod;
+				}
+			}
+		}
+		if (inverse) {
+			long scale = inverse(n, mod);
+			for (int i = 0; i < n; i++) {
+				a[i] = a[i] * scale % mod;
+			}
+		}
+	}
+
+	/**
+	 * Returns x^n mod p by repeated squaring, for x in [0, p)
+	 */
+	static long pow(long x, long n, long p) {
+		long result = 1 % p;
+		while (n > 0) {
+			if ((n & 1) != 0) {
+				result = result * x % p;
+			}
+			x = x * x % p;
+			n >>>= 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the inverse of a modulo p, by the extended Euclidean algorithm
+	 *
+	 * @throws ArithmeticException If a has no inverse modulo p
+	 */
+	static long inverse(long a, long p) {
+		long r0 = p, r1 = Math.floorMod(a, p), s0 = 0, s1 = 1;
+		while (r1 != 0) {
+			long q = r0 / r1, t = r0 - q * r1;
+			r0 = r1;
+			r1 = t;
+			t = s0 - q * s1;
+			s0 = s1;
+			s1 = t;
+		}
+		if (r0 != 1) {
+			throw new ArithmeticException(a + " has no inverse modulo " + p);
+		}
+		return Math.floorMod(s0, p);
+	}
+
+	/**
+	 * Evaluates a polynomial at a given value by Horner's rule, stepping over the gaps
+	 * between the degrees of consecutive terms with powers of x
+	 *
+	 * @param a Polynomial to be evaluated
+	 * @param x Value at which evaluation is to be done, any sign
+	 * @return Value of polynomial a at x, in [0, p)
+	 */
+	public static long evaluate(ModularPolynomial a, long x) {
+		if (a.size == 0) {
+			return 0;
+		}
+		long p = a.p;
+		x = Math.floorMod(x, p);
+		long acc = a.coeffs[a.size - 1];
+		for (int i = a.size - 2; i >= 0; i--) {
+			int gap = a.degrees[i + 1] - a.degrees[i];
+			acc = (acc * (gap == 1 ? x : pow(x, gap, p)) + a.coeffs[i]) % p;
+		}
+		return a.degrees[0] == 0 ? acc : acc * pow(x, a.degrees[0], p) % p;
+	}
+
+	/**
+	 * Arithmetic modulo p on coefficient arrays, for the term algorithms
+	 */
+	private static final class Terms extends TermArithmetic<ModularPolynomial,long[]> {
+		final long p;
+
+		Terms(long p) {
+			this.p = p;
+		}
+
+		int[] degrees(ModularPolynomial a) {
+			return a.degrees;
+		}
+
+		long[] coeffs(ModularPolynomial a) {
+			return a.coeffs;
+		}
+
+		int size(ModularPolynomial a) {
+			return a.size;
+		}
+
+		ModularPolynomial polynomial(int[] degrees, long[] coeffs, int size) {
+			return new ModularPolynomial(p, degrees, coeffs, size);
+		}
+
+		long[] newArray(int n) {
+			return new long[n];
+		}
+
+		long[] copyOf(long[] a, int n) {
+			return Arrays.copyOf(a, n);
+		}
+
+		void copy(long[] src, int i, long[] dst, int k) {
+			dst[k] = src[i];
+		}
+
+		boolean isZero(long[] a, int i) {
+			return a[i] == 0;
+		}
+
+		void add(long[] a, int i, long[] b, int j, long[] dst, int k) {
+			long sum = a[i] + b[j];
+			dst[k] = sum >= p ? sum - p : sum;
+		}
+
+		void multiply(long[] a, int i, long[] b, int j, long[] dst, int k) {
+			dst[k] = a[i] * b[j] % p;
+		}
+
+		void multiplyAdd(long[] a, int i, long[] b, int j, long[] dst, int k) {
+			// below 2^31 + 2^62, so the sum does not overflow
+			dst[k] = (dst[k] + a[i] * b[j]) % p;
+		}
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof ModularPolynomial)) {
+			return false;
+		}
+		ModularPolynomial m = (ModularPolynomial) o;
+		if (m.p != p || m.size != size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (degrees[i] != m.degrees[i] || coeffs[i] != m.coeffs[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		int h = Long.hashCode(p) * 31 + size;
+		for (int i = 0; i < size; i++) {
+			h = h * 31 + degrees[i];
+			h = h * 31 + Long.hashCode(coeffs[i]);
+		}
+		return h;
+	}
+
+	/**
+	 * Returns string representation of this polynomial, in descending order of degrees
+	 * as Polynomial.toString does
+	 */
+	public String toString() {
+		Object[] c = new Object[size];
+		for (int i = 0; i < size; i++) {
+			c[i] = coeffs[i];
+		}
+		return RingPolynomial.toString(degrees, c, size);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,318 @@
+package poly;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Multiplies and adds polynomials on several threads of a fork-join pool. For a product,
+ * the longer operand is split into blocks of consecutive terms, each block is multiplied
+ * by the other operand through PolynomialMultiplier, and the partial products are merged
+ * pairwise up a tree whose levels also run in parallel. Sums are split by degree, so the
+ * two halves of a merge can be done at once.
+ *
+ * The partial products are added in a different order than a single-threaded product
+ * adds its terms, so coefficients may differ from PolynomialMultiplier's in the last bits.
+ *
+ * Run as java poly.ParallelPolynomial [terms [degree]] to time products of two random
+ * polynomials on 1, 2, 4, 8 and 16 threads against PolynomialMultiplier.
+ *
+ */
+public final class ParallelPolynomial {
+
+	/**
+	 * Default number of term operations below which work is not split any further
+	 */
+	public static final int DEFAULT_CUTOFF = 1 << 16;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Number of term products (for a multiply) or terms (for an add) below which work is
+	 * done on a single thread
+	 */
+	private final int cutoff;
+
+	/**
+	 * Initializes an engine that runs in the common fork-join pool
+	 */
+	public ParallelPolynomial() {
+		this(ForkJoinPool.commonPool(), DEFAULT_CUTOFF);
+	}
+
+	/**
+	 * Initializes an engine
+	 *
+	 * @param pool Pool in which to run, whose parallelism sets the number of threads used
+	 * @param cutoff Number of term products (for a multiply) or terms (for an add) below
+	 *        which work is not split any further
+	 */
+	public ParallelPolynomial(ForkJoinPool pool, int cutoff) {
+		if (cutoff < 1) {
+			throw new IllegalArgumentException("Cutoff must be positive");
+		}
+		this.pool = pool;
+		this.cutoff = cutoff;
+	}
+
+	/**
+	 * Returns the product of two polynomials
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return Product of the polynomials
+	 */
+	public ArrayPolynomial multiply(ArrayPolynomial p1, ArrayPolynomial p2) {
+		ArrayPolynomial longer = p1.size >= p2.size ? p1 : p2;
+		ArrayPolynomial shorter = longer == p1 ? p2 : p1;
+		if (shorter.size == 0 || (long) longer.size * shorter.size <= cutoff) {
+			return PolynomialMultiplier.DEFAULT.multiply(p1, p2);
+		}
+		// blocks at least as long as the shorter operand, so a dense block product costs
+		// no more than twice its share of the whole, and with at least cutoff products
+		int tasks = 4 * pool.getParallelism();
+		int block = Math.max((longer.size + tasks - 1) / tasks,
+				Math.max(shorter.size, (cutoff + shorter.size - 1) / shorter.size));
+		int blocks = (longer.size + block - 1) / block;
+		return pool.invoke(new MultiplyTask(longer, shorter, block, 0, blocks));
+	}
+
+	/**
+	 * Returns the sum of two polynomials
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return Sum of the polynomials
+	 */
+	public ArrayPolynomial add(ArrayPolynomial p1, ArrayPolynomial p2) {
+		if (p1.size + p2.size <= cutoff) {
+			return ArrayPolynomial.add(p1, p2);
+		}
+		return pool.invoke(new AddTask(p1, 0, p1.size, p2, 0, p2.size));
+	}
+
+	/**
+	 * Fork-join task multiplying blocks from..to-1 of one operand by the other operand,
+	 * and adding up the block products
+	 */
+	private final class MultiplyTask extends RecursiveTask<ArrayPolynomial> {
+		private static final long serialVersionUID = 1L;
+
+		final ArrayPolynomial split, other;
+		final int block, from, to;
+
+		MultiplyTask(ArrayPolynomial split, ArrayPolynomial other, int block, int from, int to) {
+			this.split = split;
+			this.other = other;
+			this.block = block;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected ArrayPolynomial compute() {
+			if (to - from == 1) {
+				int lo = from * block, hi = Math.min(lo + block, split.size);
+				ArrayPolynomial part = new ArrayPolynomial(Arrays.copyOfRange(split.degrees, lo, hi),
+						Arrays.copyOfRange(split.coeffs, lo, hi), hi - lo);
+				return PolynomialMultiplier.DEFAULT.multiply(part, other);
+			}
+			int mid = (from + to) >>> 1;
+			MultiplyTask left = new MultiplyTask(split, other, block, from, mid);
+			left.fork();
+			ArrayPolynomial right = new MultiplyTask(split, other, block, mid, to).compute();
+			ArrayPolynomial l = left.join();
+			if (l.size + right.size <= cutoff) {
+				return ArrayPolynomial.add(l, right);
+			}
+			return new AddTask(l, 0, l.size, right, 0, right.size).compute();
+		}
+	}
+
+	/**
+	 * Fork-join task adding terms a0..a1-1 of one polynomial to terms b0..b1-1 of another.
+	 * Large ranges are split at a degree, so the terms below it and the terms from it up
+	 * are added separately and the results concatenated.
+	 */
+	private final class AddTask extends RecursiveTask<ArrayPolynomial> {
+		private static final long serialVersionUID = 1L;
+
+		final ArrayPolynomial p1, p2;
+		final int a0, a1, b0, b1;
+
+		AddTask(ArrayPolynomial p1, int a0, int a1, ArrayPolynomial p2, int b0, int b1) {
+			this.p1 = p1;
+			this.a0 = a0;
+			this.a1 = a1;
+			this.p2 = p2;
+			this.b0 = b0;
+			this.b1 = b1;
+		}
+
+		protected ArrayPolynomial compute() {
+			if ((a1 - a0) + (b1 - b0) <= cutoff || Math.max(a1 - a0, b1 - b0) < 2) {
+				return addRange(p1, a0, a1, p2, b0, b1);
+			}
+			int am, bm;
+			if (a1 - a0 >= b1 - b0) {
+				am = (a0 + a1) >>> 1;
+				bm = lowerBound(p2, b0, b1, p1.degrees[am]);
+			} else {
+				bm = (b0 + b1) >>> 1;
+				am = lowerBound(p1, a0, a1, p2.degrees[bm]);
+			}
+			AddTask low = new AddTask(p1, a0, am, p2, b0, bm);
+			low.fork();
+			ArrayPolynomial high = new AddTask(p1, am, a1, p2, bm, b1).compute();
+			ArrayPolynomial l = low.join();
+			int n = l.size + high.size;
+			int[] d = Arrays.copyOf(l.degrees, n);
+			double[] c = Arrays.copyOf(l.coeffs, n);
+			System.arraycopy(high.degrees, 0, d, l.size, high.size);
+			System.arraycopy(high.coeffs, 0, c, l.size, high.size);
+			return new ArrayPolynomial(d, c, n);
+		}
+	}
+
+	/**
+	 * Returns the first term in from..to-1 whose degree is at least degree
+	 */
+	private static int lowerBound(ArrayPolynomial p, int from, int to, int degree) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (p.degrees[mid] < degree) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * ArrayPolynomial.add over term ranges
+	 */
+	private static ArrayPolynomial addRange(ArrayPolynomial p1, int i, int a1, ArrayPolynomial p2,
+			int j, int b1) {
+		int[] d = new int[(a1 - i) + (b1 - j)];
+		double[] c = new double[d.length];
+		int k = 0;
+		while (i < a1 && j < b1) {
+			if (p1.degrees[i] < p2.degrees[j]) {
+				d[k] = p1.degrees[i];
+				c[k++] = p1.coeffs[i++];
+			} else if (p1.degrees[i] > p2.degrees[j]) {
+				d[k] = p2.degrees[j];
+				c[k++] = p2.coeffs[j++];
+			} else {
+				double sum = p1.coeffs[i] + p2.coeffs[j];
+				if (sum != 0) {
+					d[k] = p1.degrees[i];
+					c[k++] = sum;
+				}
+				i++;
+				j++;
+			}
+		}
+		for (; i < a1; i++, k++) {
+			d[k] = p1.degrees[i];
+			c[k] = p1.coeffs[i];
+		}
+		for (; j < b1; j++, k++) {
+			d[k] = p2.degrees[j];
+			c[k] = p2.coeffs[j];
+		}
+		return new ArrayPolynomial(d, c, k);
+	}
+
+	/**
+	 * Returns a polynomial with random coefficients in [-1, 1) at n distinct random degrees
+	 * below maxDegree
+	 */
+	private static ArrayPolynomial random(Random random, int n, int maxDegree) {
+		int[] degrees = new int[n];
+		double[] coeffs = new double[n];
+		for (int i = 0; i < n; i++) {
+			degrees[i] = random.nextInt(maxDegree);
+			coeffs[i] = 2 * random.nextDouble() - 1;
+		}
+		return ArrayPolynomial.of(degrees, coeffs);
+	}
+
+	/**
+	 * Returns the shortest time in ms of a few products, the first not counted as it
+	 * warms up the compiler
+	 */
+	private static double time(ParallelPolynomial engine, ArrayPolynomial p1, ArrayPolynomial p2) {
+		double best = Double.MAX_VALUE;
+		for (int rep = 0; rep < 6; rep++) {
+			long start = System.nanoTime();
+			if (engine == null) {
+				PolynomialMultiplier.DEFAULT.multiply(p1, p2);
+			} else {
+				engine.multiply(p1, p2);
+			}
+			if (rep > 0) {
+				best = Math.min(best, (System.nanoTime() - start) / 1e6);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Largest difference between the coefficients of two polynomials with the same degrees
+	 */
+	private static double maxDifference(ArrayPolynomial p1, ArrayPolynomial p2) {
+		if (p1.size != p2.size) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double diff = 0;
+		for (int i = 0; i < p1.size; i++) {
+			if (p1.degrees[i] != p2.degrees[i]) {
+				return Double.POSITIVE_INFINITY;
+			}
+			diff = Math.max(diff, Math.abs(p1.coeffs[i] - p2.coeffs[i]));
+		}
+		return diff;
+	}
+
+	/**
+	 * Times the product of two random polynomials on 1, 2, 4, 8 and 16 threads, printing
+	 * the speed-up over the single-threaded PolynomialMultiplier. Exits with status 1 if
+	 * a parallel product differs from the sequential one by more than rounding.
+	 *
+	 * @param args Number of terms of each operand, and the bound on their degrees
+	 */
+	public static void main(String[] args) {
+		int terms = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int degree = args.length > 1 ? Integer.parseInt(args[1]) : 50 * terms;
+		Random random = new Random(terms);
+		ArrayPolynomial p1 = random(random, terms, degree);
+		ArrayPolynomial p2 = random(random, terms, degree);
+		ArrayPolynomial expected = PolynomialMultiplier.DEFAULT.multiply(p1, p2);
+		double sequential = time(null, p1, p2);
+		System.out.printf("%d x %d terms, %d in the product%n", p1.size, p2.size, expected.size);
+		System.out.printf("sequential: %.1f ms%n", sequential);
+		boolean passed = true;
+		for (int threads = 1; threads <= 16; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				ParallelPolynomial engine = new ParallelPolynomial(pool, DEFAULT_CUTOFF);
+				double diff = maxDifference(expected, engine.multiply(p1, p2));
+				// partial products are added in another order, so allow for rounding
+				if (!(diff <= 1e-9 * terms)) {
+					System.out.printf("%2d threads: differs from the sequential product by %g%n", threads, diff);
+					passed = false;
+					continue;
+				}
+				double ms = time(engine, p1, p2);
+				System.out.printf("%2d threads: %.1f ms, speed-up %.2f%n", threads, ms, sequential / ms);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+}
\ No newline at end of file
@@ -32,6 +32,10 @@ public class Polynomial {
 	 *      4*x^5 - 2*x^3 + 2*x + 3 
 	 * </pre>
 	 * 
+	 * If the degrees are not in descending order after all, the terms are sorted, and terms
+	 * of equal degree are added together. Large files are read much faster by
+	 * PolynomialReader, which parses the bytes directly.
+	 * 
 	 * @param sc Scanner from which a polynomial is to be read
 	 * @throws IOException If there is any input error in reading the polynomial
 	 * @return The polynomial linked list (front node) constructed from coefficients and
@@ -40,12 +44,17 @@ public class Polynomial {
 	public static Node read(Scanner sc) 
 	throws IOException {
 		Node poly = null;
-		while (sc.hasNextLine()) {
-			Scanner scLine = new Scanner(sc.nextLine());
-			poly = new Node(scLine.nextFloat(), scLine.nextInt(), poly);
-			scLine.close();
+		boolean ordered = true;
+		while (sc.hasNext()) {
+			float coeff = sc.nextFloat();
+			int degree = sc.nextInt();
+			if (poly != null && degree >= poly.term.degree) {
+				ordered = false;
+			}
+			poly = new Node(coeff, degree, poly);
 		}
-		return poly;
+		// out of order or repeated degrees: sort, and add up terms of equal degree
+		return ordered ? poly : ArrayPolynomial.fromNode(poly).toNode();
 	}
 
 
@@ -90,26 +99,8 @@ public class Polynomial {
 	public static Node multiply(Node poly1, Node poly2) {
 		if (poly1 == null || poly2 == null)
 			return null;
-		
-		Node product = null;
-		float coeff;
-		int degree;
-		Node ptr = poly1;
-		while(ptr != null)
-		{
-			coeff = ptr.term.coeff;
-			degree = ptr.term.degree;
-			product = add(product, multiplyTerm(coeff, degree, poly2));
-			System.out.println(add(product, multiplyTerm(coeff, degree, poly2)));
-			ptr = ptr.next;
-		}
-		return product;
-	}
-	
-	private static Node multiplyTerm(float coeff,int degree, Node poly) {
-		if (poly == null)
-			return null;
-		return new Node(coeff * poly.term.coeff, degree + poly.term.degree, multiplyTerm(coeff, degree, poly.next));	
+		// schoolbook, Karatsuba, FFT or sparse merge, depending on size and density
+		return PolynomialMultiplier.DEFAULT.multiply(ArrayPolynomial.fromNode(poly1), ArrayPolynomial.fromNode(poly2)).toNode();
 	}
 
 
@@ -133,6 +124,66 @@ public class Polynomial {
 		return answer;
 	}
 	
+	/**
+	 * Evaluates a polynomial at each of a set of points, in double precision. Uses Horner's
+	 * rule over the terms, with large point sets split across threads.
+	 * 
+	 * @param poly Polynomial (front of linked list) to be evaluated
+	 * @param xs Values at which evaluation is to be done
+	 * @param out Receives the value of p at each xs[i] in out[i]
+	 */
+	public static void evaluate(Node poly, double[] xs, double[] out) {
+		PolynomialEvaluator.evaluate(ArrayPolynomial.fromNode(poly), xs, out);
+	}
+	
+	/**
+	 * Divides one polynomial by another - DOES NOT change either of the input polynomials.
+	 * 
+	 * @param poly1 Dividend (front of polynomial linked list)
+	 * @param poly2 Divisor (front of polynomial linked list)
+	 * @return Two new polynomials, the quotient q and the remainder r with
+	 *         poly1 = poly2*q + r and the degree of r below that of poly2
+	 * @throws ArithmeticException If poly2 is the zero polynomial
+	 */
+	public static Node[] divide(Node poly1, Node poly2) {
+		PolynomialAlgebra.Division<ArrayPolynomial> qr =
+				PolynomialAlgebra.divide(ArrayPolynomial.fromNode(poly1), ArrayPolynomial.fromNode(poly2));
+		return new Node[] { qr.quotient.toNode(), qr.remainder.toNode() };
+	}
+	
+	/**
+	 * Returns the derivative of a polynomial - DOES NOT change the input polynomial.
+	 * 
+	 * @param poly Polynomial (front of linked list)
+	 * @return A new polynomial which is the derivative of poly
+	 */
+	public static Node derivative(Node poly) {
+		return PolynomialAlgebra.derivative(ArrayPolynomial.fromNode(poly)).toNode();
+	}
+	
+	/**
+	 * Returns the integral of a polynomial, with zero constant term - DOES NOT change the
+	 * input polynomial.
+	 * 
+	 * @param poly Polynomial (front of linked list)
+	 * @return A new polynomial whose derivative is poly
+	 */
+	public static Node integral(Node poly) {
+		return PolynomialAlgebra.integral(ArrayPolynomial.fromNode(poly)).toNode();
+	}
+	
+	/**
+	 * Returns the composition of two polynomials - DOES NOT change either of the input
+	 * polynomials.
+	 * 
+	 * @param poly1 Outer polynomial (front of polynomial linked list)
+	 * @param poly2 Inner polynomial (front of polynomial linked list)
+	 * @return A new polynomial which is poly1(poly2(x))
+	 */
+	public static Node compose(Node poly1, Node poly2) {
+		return PolynomialAlgebra.compose(ArrayPolynomial.fromNode(poly1), ArrayPolynomial.fromNode(poly2)).toNode();
+	}
+	
 	/**
 	 * Returns string representation of a polynomial
 	 * 
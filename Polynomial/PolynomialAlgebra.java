@@ -0,0 +1,498 @@
+package poly;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Division, GCD, derivative, integral and composition of polynomials, over double
+ * coefficients (ArrayPolynomial) and integers modulo a prime (ModularPolynomial). All
+ * products go through PolynomialMultiplier and the NTT of ModularPolynomial, so these
+ * operations get the same sub-quadratic multiplication:
+ * <ul>
+ * <li>division is long division, or modulo a prime for large degrees Newton iteration on
+ * the reversed divisor, which takes a constant number of multiplications</li>
+ * <li>GCD is Euclid's algorithm, or for large degrees the half-GCD recursion, which
+ * takes O(M(n) log n) for M(n) the cost of a multiplication</li>
+ * <li>composition is Horner's rule over the terms, with powers of the inner polynomial
+ * for the gaps</li>
+ * </ul>
+ * Newton division and GCD are provided only modulo a prime. Over doubles, the power
+ * series inverse of the reversed divisor grows like the largest root of the divisor
+ * raised to the degree of the quotient, and overflows, and Euclid's remainders lose all
+ * precision within a few steps.
+ *
+ */
+public final class PolynomialAlgebra {
+
+	/**
+	 * Default length of quotient and of divisor from which division modulo a prime is done
+	 * by Newton iteration rather than long division
+	 */
+	public static final int NEWTON_THRESHOLD = 128;
+
+	/**
+	 * Default degree below which GCD steps are done by Euclid's algorithm rather than
+	 * half-GCD
+	 */
+	public static final int HALF_GCD_THRESHOLD = 128;
+
+	private PolynomialAlgebra() {
+	}
+
+	/**
+	 * Quotient and remainder of a polynomial division
+	 *
+	 * @param <P> Polynomial type
+	 */
+	public static final class Division<P> {
+		public final P quotient;
+
+		/**
+		 * Remainder, of lower degree than the divisor
+		 */
+		public final P remainder;
+
+		Division(P quotient, P remainder) {
+			this.quotient = quotient;
+			this.remainder = remainder;
+		}
+
+		public String toString() {
+			return "(" + quotient + ", " + remainder + ")";
+		}
+	}
+
+	/**
+	 * Divides one polynomial by another
+	 *
+	 * @param a Dividend
+	 * @param b Divisor
+	 * @return Quotient q and remainder r with a = b*q + r, deg r < deg b
+	 * @throws ArithmeticException If b is the zero polynomial
+	 */
+	public static Division<ArrayPolynomial> divide(ArrayPolynomial a, ArrayPolynomial b) {
+		if (b.size == 0) {
+			throw new ArithmeticException("Division by the zero polynomial");
+		}
+		int n = a.degree(), m = b.degree();
+		if (n < m) {
+			return new Division<ArrayPolynomial>(ArrayPolynomial.ZERO, a);
+		}
+		// long division, with the divisor's terms only
+		double[] ad = a.toDense();
+		double lead = b.coeffs[b.size - 1];
+		double[] q = new double[n - m + 1];
+		for (int i = n; i >= m; i--) {
+			double c = ad[i] / lead;
+			q[i - m] = c;
+			if (c != 0) {
+				for (int j = 0; j < b.size - 1; j++) {
+					ad[i - m + b.degrees[j]] -= c * b.coeffs[j];
+				}
+			}
+			ad[i] = 0;
+		}
+		return new Division<ArrayPolynomial>(ArrayPolynomial.fromDense(q),
+				ArrayPolynomial.fromDense(Arrays.copyOf(ad, m)));
+	}
+
+	/**
+	 * Divides one polynomial by another modulo a prime
+	 *
+	 * @param a Dividend
+	 * @param b Divisor, with the same modulus
+	 * @return Quotient q and remainder r with a = b*q + r, deg r < deg b
+	 * @throws ArithmeticException If b is the zero polynomial, or its leading coefficient
+	 *         is not invertible
+	 */
+	public static Division<ModularPolynomial> divide(ModularPolynomial a, ModularPolynomial b) {
+		return divide(a, b, NEWTON_THRESHOLD);
+	}
+
+	/**
+	 * Divides one polynomial by another modulo a prime, with the sizes from which Newton
+	 * iteration is used
+	 *
+	 * @param a Dividend
+	 * @param b Divisor, with the same modulus
+	 * @param newtonThreshold Length of quotient and of divisor from which the division is
+	 *        done by Newton iteration rather than long division
+	 * @return Quotient q and remainder r with a = b*q + r, deg r < deg b
+	 * @throws ArithmeticException If b is the zero polynomial, or its leading coefficient
+	 *         is not invertible
+	 * @throws IllegalArgumentException If newtonThreshold is not positive
+	 */
+	public static Division<ModularPolynomial> divide(ModularPolynomial a, ModularPolynomial b,
+			int newtonThreshold) {
+		if (newtonThreshold < 1) {
+			throw new IllegalArgumentException("Newton threshold must be positive: " + newtonThreshold);
+		}
+		if (b.size == 0) {
+			throw new ArithmeticException("Division by the zero polynomial");
+		}
+		if (a.p != b.p) {
+			throw new IllegalArgumentException("Moduli differ: " + a.p + " and " + b.p);
+		}
+		long p = a.p;
+		int n = a.degree(), m = b.degree();
+		if (n < m) {
+			return new Division<ModularPolynomial>(ModularPolynomial.zero(p), a);
+		}
+		long[] ad = a.toDense();
+		int qlen = n - m + 1;
+		if (Math.min(qlen, m + 1) < newtonThreshold) {
+			long lead = ModularPolynomial.inverse(b.coeffs[b.size - 1], p);
+			long[] q = new long[qlen];
+			for (int i = n; i >= m; i--) {
+				long c = ad[i] * lead % p;
+				q[i - m] = c;
+				if (c != 0) {
+					for (int j = 0; j < b.size - 1; j++) {
+						int at = i - m + b.degrees[j];
+						ad[at] = Math.floorMod(ad[at] - c * b.coeffs[j] % p, p);
+					}
+				}
+				ad[i] = 0;
+			}
+			return new Division<ModularPolynomial>(ModularPolynomial.fromDense(p, q, 0),
+					ModularPolynomial.fromDense(p, Arrays.copyOf(ad, m), 0));
+		}
+		long[] bd = b.toDense();
+		long[] inv = inverse(reverse(bd, qlen), qlen, p);
+		long[] q = reverse(truncate(ModularPolynomial.multiply(reverse(ad, qlen), inv, p), qlen), qlen);
+		long[] bq = ModularPolynomial.multiply(bd, q, p);
+		long[] r = new long[m];
+		for (int i = 0; i < m; i++) {
+			r[i] = Math.floorMod(ad[i] - bq[i], p);
+		}
+		return new Division<ModularPolynomial>(ModularPolynomial.fromDense(p, q, 0),
+				ModularPolynomial.fromDense(p, r, 0));
+	}
+
+	private static long[] inverse(long[] f, int len, long p) {
+		long[] g = { ModularPolynomial.inverse(f[0], p) };
+		for (int k = 1; k < len;) {
+			k = Math.min(2 * k, len);
+			long[] e = truncate(ModularPolynomial.multiply(truncate(f, k), g, p), k);
+			for (int i = 0; i < e.length; i++) {
+				e[i] = e[i] == 0 ? 0 : p - e[i];
+			}
+			e[0] = (e[0] + 2) % p;
+			g = truncate(ModularPolynomial.multiply(g, e, p), k);
+		}
+		return g;
+	}
+
+	private static long[] reverse(long[] a, int len) {
+		long[] r = new long[len];
+		for (int i = 0; i < len && i < a.length; i++) {
+			r[i] = a[a.length - 1 - i];
+		}
+		return r;
+	}
+
+	private static long[] truncate(long[] a, int len) {
+		return a.length == len ? a : Arrays.copyOf(a, len);
+	}
+
+	/**
+	 * Returns the greatest common divisor of two polynomials modulo a prime
+	 *
+	 * @param a First polynomial
+	 * @param b Second polynomial, with the same modulus
+	 * @return Monic GCD, the zero polynomial if both are zero
+	 */
+	public static ModularPolynomial gcd(ModularPolynomial a, ModularPolynomial b) {
+		return gcd(a, b, HALF_GCD_THRESHOLD);
+	}
+
+	/**
+	 * Returns the greatest common divisor of two polynomials modulo a prime, with the
+	 * degree from which half-GCD is used
+	 *
+	 * @param a First polynomial
+	 * @param b Second polynomial, with the same modulus
+	 * @param halfGcdThreshold Degree below which GCD steps are done by Euclid's algorithm
+	 *        rather than half-GCD
+	 * @return Monic GCD, the zero polynomial if both are zero
+	 * @throws IllegalArgumentException If halfGcdThreshold is not positive
+	 */
+	public static ModularPolynomial gcd(ModularPolynomial a, ModularPolynomial b, int halfGcdThreshold) {
+		if (halfGcdThreshold < 1) {
+			throw new IllegalArgumentException("Half-GCD threshold must be positive: " + halfGcdThreshold);
+		}
+		if (a.p != b.p) {
+			throw new IllegalArgumentException("Moduli differ: " + a.p + " and " + b.p);
+		}
+		if (a.degree() < b.degree()) {
+			ModularPolynomial t = a;
+			a = b;
+			b = t;
+		}
+		while (b.size != 0) {
+			if (b.degree() >= halfGcdThreshold && a.degree() > b.degree()) {
+				ModularPolynomial[] m = halfGcd(a, b);
+				ModularPolynomial a1 = combine(m[0], a, m[1], b);
+				b = combine(m[2], a, m[3], b);
+				a = a1;
+				if (b.size == 0) {
+					break;
+				}
+			}
+			ModularPolynomial r = divide(a, b).remainder;
+			a = b;
+			b = r;
+		}
+		return monic(a);
+	}
+
+	/**
+	 * Half-GCD: for deg a > deg b, returns the matrix M = {m00, m01, m10, m11} of the
+	 * Euclidean steps that take (a, b) to (m00*a + m01*b, m10*a + m11*b), the first
+	 * consecutive remainders whose degrees straddle half the degree of a.
+	 */
+	private static ModularPolynomial[] halfGcd(ModularPolynomial a, ModularPolynomial b) {
+		long p = a.p;
+		int m = (a.degree() + 1) / 2;
+		if (b.degree() < m) {
+			return identity(p);
+		}
+		// the quotients of the top halves are the first quotients of the whole
+		ModularPolynomial[] r = halfGcd(shift(a, m), shift(b, m));
+		ModularPolynomial c = combine(r[0], a, r[1], b);
+		ModularPolynomial d = combine(r[2], a, r[3], b);
+		if (d.degree() < m) {
+			return r;
+		}
+		Division<ModularPolynomial> qr = divide(c, d);
+		ModularPolynomial e = qr.remainder;
+		// step matrix {0, 1, 1, -q} applied to r
+		ModularPolynomial nq = ModularPolynomial.negate(qr.quotient);
+		r = new ModularPolynomial[] { r[2], r[3],
+				ModularPolynomial.add(r[0], ModularPolynomial.multiply(nq, r[2])),
+				ModularPolynomial.add(r[1], ModularPolynomial.multiply(nq, r[3])) };
+		if (e.degree() < m) {
+			return r;
+		}
+		int k = 2 * m - d.degree();
+		ModularPolynomial[] s = halfGcd(shift(d, k), shift(e, k));
+		return product(s, r);
+	}
+
+	private static ModularPolynomial[] identity(long p) {
+		ModularPolynomial one = ModularPolynomial.of(p, new int[] { 0 }, new long[] { 1 });
+		ModularPolynomial zero = ModularPolynomial.zero(p);
+		return new ModularPolynomial[] { one, zero, zero, one };
+	}
+
+	/**
+	 * Returns the 2x2 matrix product s*r
+	 */
+	private static ModularPolynomial[] product(ModularPolynomial[] s, ModularPolynomial[] r) {
+		return new ModularPolynomial[] { combine(s[0], r[0], s[1], r[2]), combine(s[0], r[1], s[1], r[3]),
+				combine(s[2], r[0], s[3], r[2]), combine(s[2], r[1], s[3], r[3]) };
+	}
+
+	/**
+	 * Returns x*a + y*b
+	 */
+	private static ModularPolynomial combine(ModularPolynomial x, ModularPolynomial a, ModularPolynomial y,
+			ModularPolynomial b) {
+		return ModularPolynomial.add(ModularPolynomial.multiply(x, a), ModularPolynomial.multiply(y, b));
+	}
+
+	/**
+	 * Returns a divided by x^k, dropping the terms of degree below k
+	 */
+	private static ModularPolynomial shift(ModularPolynomial a, int k) {
+		int from = 0;
+		while (from < a.size && a.degrees[from] < k) {
+			from++;
+		}
+		int n = a.size - from;
+		int[] d = new int[n];
+		for (int i = 0; i < n; i++) {
+			d[i] = a.degrees[from + i] - k;
+		}
+		return new ModularPolynomial(a.p, d, Arrays.copyOfRange(a.coeffs, from, a.size), n);
+	}
+
+	private static ModularPolynomial monic(ModularPolynomial a) {
+		if (a.size == 0 || a.coeffs[a.size - 1] == 1) {
+			return a;
+		}
+		long inv = ModularPolynomial.inverse(a.coeffs[a.size - 1], a.p);
+		long[] c = new long[a.size];
+		for (int i = 0; i < a.size; i++) {
+			c[i] = a.coeffs[i] * inv % a.p;
+		}
+		return new ModularPolynomial(a.p, Arrays.copyOf(a.degrees, a.size), c, a.size);
+	}
+
+	/**
+	 * Returns the derivative of a polynomial
+	 *
+	 * @param a Polynomial
+	 * @return Derivative of a
+	 */
+	public static ArrayPolynomial derivative(ArrayPolynomial a) {
+		int from = a.size > 0 && a.degrees[0] == 0 ? 1 : 0;
+		int n = a.size - from;
+		int[] d = new int[n];
+		double[] c = new double[n];
+		for (int i = 0; i < n; i++) {
+			d[i] = a.degrees[from + i] - 1;
+			c[i] = a.coeffs[from + i] * a.degrees[from + i];
+		}
+		return new ArrayPolynomial(d, c, n);
+	}
+
+	/**
+	 * Returns the derivative of a polynomial modulo p
+	 *
+	 * @param a Polynomial
+	 * @return Derivative of a
+	 */
+	public static ModularPolynomial derivative(ModularPolynomial a) {
+		int[] d = new int[a.size];
+		long[] c = new long[a.size];
+		int k = 0;
+		for (int i = 0; i < a.size; i++) {
+			long v = a.coeffs[i] * (a.degrees[i] % a.p) % a.p;
+			if (v != 0) {
+				d[k] = a.degrees[i] - 1;
+				c[k++] = v;
+			}
+		}
+		return new ModularPolynomial(a.p, d, c, k);
+	}
+
+	/**
+	 * Returns the integral of a polynomial with zero constant term
+	 *
+	 * @param a Polynomial
+	 * @return Polynomial whose derivative is a
+	 * @throws ArithmeticException If a degree of the integral would overflow an int
+	 */
+	public static ArrayPolynomial integral(ArrayPolynomial a) {
+		if (a.degree() == Integer.MAX_VALUE) {
+			throw new ArithmeticException("Degree overflow");
+		}
+		int[] d = new int[a.size];
+		double[] c = new double[a.size];
+		int k = 0;
+		for (int i = 0; i < a.size; i++) {
+			double v = a.coeffs[i] / (a.degrees[i] + 1.0);
+			if (v != 0) {
+				d[k] = a.degrees[i] + 1;
+				c[k++] = v;
+			}
+		}
+		return new ArrayPolynomial(d, c, k);
+	}
+
+	/**
+	 * Returns the integral of a polynomial modulo p with zero constant term
+	 *
+	 * @param a Polynomial
+	 * @return Polynomial whose derivative is a
+	 * @throws ArithmeticException If a has a term of degree p-1 (mod p), whose integral
+	 *         would need a division by zero, or a degree would overflow an int
+	 */
+	public static ModularPolynomial integral(ModularPolynomial a) {
+		if (a.degree() == Integer.MAX_VALUE) {
+			throw new ArithmeticException("Degree overflow");
+		}
+		int[] d = new int[a.size];
+		long[] c = new long[a.size];
+		for (int i = 0; i < a.size; i++) {
+			d[i] = a.degrees[i] + 1;
+			c[i] = a.coeffs[i] * ModularPolynomial.inverse(d[i] % a.p, a.p) % a.p;
+		}
+		return new ModularPolynomial(a.p, d, c, a.size);
+	}
+
+	/**
+	 * Returns the composition a(b(x))
+	 *
+	 * @param a Outer polynomial
+	 * @param b Inner polynomial
+	 * @return Polynomial a(b(x))
+	 */
+	public static ArrayPolynomial compose(ArrayPolynomial a, ArrayPolynomial b) {
+		if (a.size == 0) {
+			return a;
+		}
+		ArrayList<ArrayPolynomial> squares = new ArrayList<ArrayPolynomial>();
+		squares.add(b);
+		ArrayPolynomial acc = constant(a.coeffs[a.size - 1]);
+		for (int i = a.size - 2; i >= 0; i--) {
+			acc = PolynomialMultiplier.DEFAULT.multiply(acc, power(squares, a.degrees[i + 1] - a.degrees[i]));
+			acc = ArrayPolynomial.add(acc, constant(a.coeffs[i]));
+		}
+		return a.degrees[0] == 0 ? acc : PolynomialMultiplier.DEFAULT.multiply(acc, power(squares, a.degrees[0]));
+	}
+
+	private static ArrayPolynomial constant(double c) {
+		return new ArrayPolynomial(new int[] { 0 }, new double[] { c }, 1);
+	}
+
+	/**
+	 * Returns b^n, where squares holds b, b^2, b^4, ... and is extended as needed
+	 */
+	private static ArrayPolynomial power(ArrayList<ArrayPolynomial> squares, int n) {
+		ArrayPolynomial result = null;
+		for (int k = 0; n != 0; k++, n >>>= 1) {
+			if (k == squares.size()) {
+				ArrayPolynomial last = squares.get(k - 1);
+				squares.add(PolynomialMultiplier.DEFAULT.multiply(last, last));
+			}
+			if ((n & 1) != 0) {
+				result = result == null ? squares.get(k) : PolynomialMultiplier.DEFAULT.multiply(result, squares.get(k));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the composition a(b(x)) modulo p
+	 *
+	 * @param a Outer polynomial
+	 * @param b Inner polynomial, with the same modulus
+	 * @return Polynomial a(b(x))
+	 */
+	public static ModularPolynomial compose(ModularPolynomial a, ModularPolynomial b) {
+		if (a.p != b.p) {
+			throw new IllegalArgumentException("Moduli differ: " + a.p + " and " + b.p);
+		}
+		if (a.size == 0) {
+			return a;
+		}
+		ArrayList<ModularPolynomial> squares = new ArrayList<ModularPolynomial>();
+		squares.add(b);
+		ModularPolynomial acc = constant(a.p, a.coeffs[a.size - 1]);
+		for (int i = a.size - 2; i >= 0; i--) {
+			acc = ModularPolynomial.multiply(acc, modPower(squares, a.degrees[i + 1] - a.degrees[i]));
+			acc = ModularPolynomial.add(acc, constant(a.p, a.coeffs[i]));
+		}
+		return a.degrees[0] == 0 ? acc : ModularPolynomial.multiply(acc, modPower(squares, a.degrees[0]));
+	}
+
+	private static ModularPolynomial constant(long p, long c) {
+		return new ModularPolynomial(p, new int[] { 0 }, new long[] { c }, 1);
+	}
+
+	private static ModularPolynomial modPower(ArrayList<ModularPolynomial> squares, int n) {
+		ModularPolynomial result = null;
+		for (int k = 0; n != 0; k++, n >>>= 1) {
+			if (k == squares.size()) {
+				ModularPolynomial last = squares.get(k - 1);
+				squares.add(ModularPolynomial.multiply(last, last));
+			}
+			if ((n & 1) != 0) {
+				result = result == null ? squares.get(k) : ModularPolynomial.multiply(result, squares.get(k));
+			}
+		}
+		return result;
+	}
+}
\ No newline at end of file
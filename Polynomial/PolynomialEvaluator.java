@@ -0,0 +1,196 @@
+package poly;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates a polynomial at many points at once. Points are processed CHUNK at a time by
+ * Horner's rule, one term over the whole chunk before the next, which leaves the JIT
+ * simple counted loops over double arrays to vectorize. The gap between the degrees of
+ * consecutive terms is stepped over with a power ladder x, x^2, x^4, ... built once per
+ * chunk, so a sparse polynomial costs one multiplication per set bit of each gap rather
+ * than a call to pow per term.
+ *
+ */
+public final class PolynomialEvaluator {
+
+	/**
+	 * Number of points evaluated together
+	 */
+	public static final int CHUNK = 256;
+
+	/**
+	 * Default point count below which a batch is evaluated on the calling thread, and
+	 * below which a parallel batch is not split any further
+	 */
+	public static final int PARALLEL_CUTOFF = 64 * CHUNK;
+
+	private final ArrayPolynomial p;
+
+	/**
+	 * Gap between the degrees of term i and term i+1
+	 */
+	private final int[] gaps;
+
+	/**
+	 * Number of entries in the power ladder: enough for the largest gap and for the
+	 * lowest degree
+	 */
+	private final int rungs;
+
+	private PolynomialEvaluator(ArrayPolynomial p) {
+		this.p = p;
+		gaps = new int[Math.max(p.size - 1, 0)];
+		int max = p.size == 0 ? 1 : Math.max(p.degrees[0], 1);
+		for (int i = 0; i < gaps.length; i++) {
+			gaps[i] = p.degrees[i + 1] - p.degrees[i];
+			max = Math.max(max, gaps[i]);
+		}
+		rungs = 32 - Integer.numberOfLeadingZeros(max);
+	}
+
+	/**
+	 * Evaluates a polynomial at each of a set of points. Large batches are split into
+	 * ranges that are evaluated in parallel in the common fork-join pool.
+	 *
+	 * @param p Polynomial to be evaluated
+	 * @param xs Values at which evaluation is to be done
+	 * @param out Receives the value of p at each xs[i] in out[i]
+	 * @throws IllegalArgumentException If out is shorter than xs
+	 */
+	public static void evaluate(ArrayPolynomial p, double[] xs, double[] out) {
+		if (xs.length <= PARALLEL_CUTOFF) {
+			check(xs, out);
+			new PolynomialEvaluator(p).evaluateRange(xs, out, 0, xs.length);
+			return;
+		}
+		evaluate(p, xs, out, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Evaluates a polynomial at each of a set of points, splitting the points into ranges
+	 * that are evaluated in parallel in the given fork-join pool.
+	 *
+	 * @param p Polynomial to be evaluated
+	 * @param xs Values at which evaluation is to be done
+	 * @param out Receives the value of p at each xs[i] in out[i]
+	 * @param pool Pool in which to run the evaluation
+	 * @throws IllegalArgumentException If out is shorter than xs
+	 */
+	public static void evaluate(ArrayPolynomial p, double[] xs, double[] out, ForkJoinPool pool) {
+		evaluate(p, xs, out, pool, PARALLEL_CUTOFF);
+	}
+
+	/**
+	 * Evaluates a polynomial at each of a set of points, splitting the points into ranges
+	 * of at most cutoff points that are evaluated in parallel in the given fork-join pool.
+	 * Ranges are never split below two chunks.
+	 *
+	 * @param p Polynomial to be evaluated
+	 * @param xs Values at which evaluation is to be done
+	 * @param out Receives the value of p at each xs[i] in out[i]
+	 * @param pool Pool in which to run the evaluation
+	 * @param cutoff Point count below which a range is not split any further
+	 * @throws IllegalArgumentException If out is shorter than xs, or cutoff is not positive
+	 */
+	public static void evaluate(ArrayPolynomial p, double[] xs, double[] out, ForkJoinPool pool,
+			int cutoff) {
+		check(xs, out);
+		if (cutoff < 1) {
+			throw new IllegalArgumentException("Cutoff must be positive: " + cutoff);
+		}
+		pool.invoke(new PolynomialEvaluator(p).new BatchTask(xs, out, 0, xs.length,
+				Math.max(cutoff, 2 * CHUNK)));
+	}
+
+	private static void check(double[] xs, double[] out) {
+		if (out.length < xs.length) {
+			throw new IllegalArgumentException("Output has " + out.length + " values for "
+					+ xs.length + " points");
+		}
+	}
+
+	private void evaluateRange(double[] xs, double[] out, int from, int to) {
+		if (p.size == 0) {
+			for (int i = from; i < to; i++) {
+				out[i] = 0;
+			}
+			return;
+		}
+		double[][] ladder = new double[rungs][CHUNK];
+		double[] acc = new double[CHUNK];
+		double[] x = ladder[0];
+		for (int start = from; start < to; start += CHUNK) {
+			int len = Math.min(CHUNK, to - start);
+			System.arraycopy(xs, start, x, 0, len);
+			for (int k = 1; k < rungs; k++) {
+				double[] prev = ladder[k - 1], cur = ladder[k];
+				for (int j = 0; j < len; j++) {
+					cur[j] = prev[j] * prev[j];
+				}
+			}
+			double top = p.coeffs[p.size - 1];
+			for (int j = 0; j < len; j++) {
+				acc[j] = top;
+			}
+			for (int i = p.size - 2; i >= 0; i--) {
+				double c = p.coeffs[i];
+				if (gaps[i] == 1) {
+					for (int j = 0; j < len; j++) {
+						acc[j] = acc[j] * x[j] + c;
+					}
+				} else {
+					step(acc, ladder, gaps[i], len);
+					for (int j = 0; j < len; j++) {
+						acc[j] += c;
+					}
+				}
+			}
+			step(acc, ladder, p.degrees[0], len);
+			System.arraycopy(acc, 0, out, start, len);
+		}
+	}
+
+	/**
+	 * Multiplies each accumulator by x^n, one ladder rung per set bit of n
+	 */
+	private static void step(double[] acc, double[][] ladder, int n, int len) {
+		for (int k = 0; n != 0; k++, n >>>= 1) {
+			if ((n & 1) != 0) {
+				double[] pow = ladder[k];
+				for (int j = 0; j < len; j++) {
+					acc[j] *= pow[j];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fork-join task evaluating the points from..to-1 of a batch
+	 */
+	private final class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final double[] xs, out;
+		final int from, to, cutoff;
+
+		BatchTask(double[] xs, double[] out, int from, int to, int cutoff) {
+			this.xs = xs;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+			this.cutoff = cutoff;
+		}
+
+		protected void compute() {
+			if (to - from <= cutoff) {
+				evaluateRange(xs, out, from, to);
+				return;
+			}
+			// split on a chunk boundary
+			int mid = from + ((to - from) / 2 / CHUNK) * CHUNK;
+			invokeAll(new BatchTask(xs, out, from, mid, cutoff),
+					new BatchTask(xs, out, mid, to, cutoff));
+		}
+	}
+}
\ No newline at end of file
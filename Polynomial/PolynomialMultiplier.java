@@ -0,0 +1,302 @@
+package poly;
+
+/**
+ * Multiplication engine for polynomials. Sparse operands are multiplied term by term
+ * (ArrayPolynomial's dense accumulation or heap merge); dense operands are converted to
+ * coefficient arrays and multiplied by schoolbook, Karatsuba or FFT multiplication
+ * according to the length of the shorter operand. The thresholds between the methods
+ * are given to each multiplier, so they can be tuned from benchmarks on the target
+ * machine; DEFAULT uses the DEFAULT_ ones.
+ *
+ */
+public final class PolynomialMultiplier {
+
+	/**
+	 * Default density below which operands are multiplied as sparse polynomials
+	 */
+	public static final double DEFAULT_SPARSE_DENSITY = 0.1;
+
+	/**
+	 * Default length of the shorter operand below which dense products are done by
+	 * schoolbook multiplication
+	 */
+	public static final int DEFAULT_KARATSUBA_THRESHOLD = 48;
+
+	/**
+	 * Default length of the shorter operand from which dense products are done by FFT
+	 */
+	public static final int DEFAULT_FFT_THRESHOLD = 1024;
+
+	/**
+	 * Multiplier with the default thresholds
+	 */
+	public static final PolynomialMultiplier DEFAULT = new PolynomialMultiplier(DEFAULT_SPARSE_DENSITY,
+			DEFAULT_KARATSUBA_THRESHOLD, DEFAULT_FFT_THRESHOLD);
+
+	/**
+	 * Operands with fewer non-zero terms than this fraction of their degree range are
+	 * multiplied as sparse polynomials
+	 */
+	private final double sparseDensity;
+
+	/**
+	 * Dense products whose shorter operand has fewer coefficients than this are done by
+	 * schoolbook multiplication. Also the size at which Karatsuba recursion stops.
+	 */
+	private final int karatsubaThreshold;
+
+	/**
+	 * Dense products whose shorter operand has at least this many coefficients are done
+	 * by FFT
+	 */
+	private final int fftThreshold;
+
+	/**
+	 * Initializes a multiplier
+	 *
+	 * @param sparseDensity Fraction of their degree range below which operands with fewer
+	 *        non-zero terms are multiplied as sparse polynomials
+	 * @param karatsubaThreshold Length of the shorter operand below which dense products are
+	 *        done by schoolbook multiplication, and at which Karatsuba recursion stops
+	 * @param fftThreshold Length of the shorter operand from which dense products are done by FFT
+	 * @throws IllegalArgumentException If sparseDensity is negative or not a number,
+	 *         karatsubaThreshold is below 2, or fftThreshold is not positive
+	 */
+	public PolynomialMultiplier(double sparseDensity, int karatsubaThreshold, int fftThreshold) {
+		if (!(sparseDensity >= 0)) {
+			throw new IllegalArgumentException("Bad sparse density: " + sparseDensity);
+		}
+		if (karatsubaThreshold < 2) {
+			// Karatsuba would split single coefficients into empty halves
+			throw new IllegalArgumentException("Karatsuba threshold must be at least 2: " + karatsubaThreshold);
+		}
+		if (fftThreshold < 1) {
+			throw new IllegalArgumentException("FFT threshold must be positive: " + fftThreshold);
+		}
+		this.sparseDensity = sparseDensity;
+		this.karatsubaThreshold = karatsubaThreshold;
+		this.fftThreshold = fftThreshold;
+	}
+
+	/**
+	 * Returns the product of two polynomials, picking the multiplication method from the
+	 * operands' sizes and densities
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return Product of the polynomials
+	 */
+	public ArrayPolynomial multiply(ArrayPolynomial p1, ArrayPolynomial p2) {
+		if (p1.size == 0 || p2.size == 0) {
+			return ArrayPolynomial.ZERO;
+		}
+		if (Math.min(p1.size, p2.size) < karatsubaThreshold || density(p1) < sparseDensity
+				|| density(p2) < sparseDensity) {
+			return ArrayPolynomial.multiplySparse(p1, p2);
+		}
+		int low1 = p1.degrees[0], low2 = p2.degrees[0];
+		double[] product = multiply(dense(p1, low1), dense(p2, low2));
+		return ArrayPolynomial.fromDense(product, low1 + low2);
+	}
+
+	/**
+	 * Returns the product of two dense coefficient arrays
+	 *
+	 * @param a Coefficients of the first polynomial, a[d] for x^d
+	 * @param b Coefficients of the second polynomial, b[d] for x^d
+	 * @return Coefficients of the product, of length a.length+b.length-1
+	 */
+	public double[] multiply(double[] a, double[] b) {
+		if (a.length == 0 || b.length == 0) {
+			return new double[0];
+		}
+		int small = Math.min(a.length, b.length);
+		if (small < karatsubaThreshold) {
+			return schoolbook(a, b);
+		}
+		if (small < fftThreshold) {
+			return karatsuba(a, b);
+		}
+		return fft(a, b);
+	}
+
+	private static double density(ArrayPolynomial p) {
+		return p.size / (double) (p.degree() - p.degrees[0] + 1);
+	}
+
+	/**
+	 * Dense coefficients of p divided by x^low
+	 */
+	private static double[] dense(ArrayPolynomial p, int low) {
+		double[] a = new double[p.degree() - low + 1];
+		for (int i = 0; i < p.size; i++) {
+			a[p.degrees[i] - low] = p.coeffs[i];
+		}
+		return a;
+	}
+
+	/**
+	 * Schoolbook multiplication, O(n*m)
+	 */
+	static double[] schoolbook(double[] a, double[] b) {
+		double[] c = new double[a.length + b.length - 1];
+		for (int i = 0; i < a.length; i++) {
+			double ai = a[i];
+			if (ai == 0) {
+				continue;
+			}
+			for (int j = 0; j < b.length; j++) {
+				c[i + j] += ai * b[j];
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Karatsuba multiplication, O(n^1.585). Operands are split at half the longer length;
+	 * when the shorter one is entirely below the split only the longer one is split.
+	 */
+	double[] karatsuba(double[] a, double[] b) {
+		if (Math.min(a.length, b.length) < karatsubaThreshold) {
+			return schoolbook(a, b);
+		}
+		int h = Math.max(a.length, b.length) / 2;
+		double[] c = new double[a.length + b.length - 1];
+		if (a.length <= h || b.length <= h) {
+			double[] longer = a.length > b.length ? a : b;
+			double[] shorter = longer == a ? b : a;
+			addInto(c, karatsuba(shorter, slice(longer, 0, h)), 0);
+			addInto(c, karatsuba(shorter, slice(longer, h, longer.length)), h);
+			return c;
+		}
+		double[] a0 = slice(a, 0, h), a1 = slice(a, h, a.length);
+		double[] b0 = slice(b, 0, h), b1 = slice(b, h, b.length);
+		double[] z0 = karatsuba(a0, b0);
+		double[] z2 = karatsuba(a1, b1);
+		double[] z1 = karatsuba(sum(a0, a1), sum(b0, b1));
+		for (int i = 0; i < z0.length; i++) {
+			z1[i] -= z0[i];
+		}
+		for (int i = 0; i < z2.length; i++) {
+			z1[i] -= z2[i];
+		}
+		addInto(c, z0, 0);
+		addInto(c, z1, h);
+		addInto(c, z2, 2 * h);
+		return c;
+	}
+
+	private static double[] slice(double[] a, int from, int to) {
+		double[] s = new double[to - from];
+		System.arraycopy(a, from, s, 0, to - from);
+		return s;
+	}
+
+	private static double[] sum(double[] a, double[] b) {
+		double[] s = new double[Math.max(a.length, b.length)];
+		for (int i = 0; i < a.length; i++) {
+			s[i] = a[i];
+		}
+		for (int i = 0; i < b.length; i++) {
+			s[i] += b[i];
+		}
+		return s;
+	}
+
+	/**
+	 * Adds src into dest starting at dest[offset]; the part of src that falls beyond the
+	 * end of dest must be zero
+	 */
+	private static void addInto(double[] dest, double[] src, int offset) {
+		int n = Math.min(src.length, dest.length - offset);
+		for (int i = 0; i < n; i++) {
+			dest[offset + i] += src[i];
+		}
+	}
+
+	/**
+	 * FFT multiplication, O(n log n). Coefficients come back with a rounding error
+	 * relative to the size of the operands; results smaller than that error bound are
+	 * set to exactly zero so that cancelling terms disappear as they do with the exact
+	 * methods.
+	 */
+	static double[] fft(double[] a, double[] b) {
+		int need = a.length + b.length - 1;
+		int n = Integer.highestOneBit(need);
+		if (n < need) {
+			n <<= 1;
+		}
+		double[] ar = new double[n], ai = new double[n];
+		double[] br = new double[n], bi = new double[n];
+		System.arraycopy(a, 0, ar, 0, a.length);
+		System.arraycopy(b, 0, br, 0, b.length);
+		double[] cos = new double[n / 2], sin = new double[n / 2];
+		for (int i = 0; i < n / 2; i++) {
+			double angle = 2 * Math.PI * i / n;
+			cos[i] = Math.cos(angle);
+			sin[i] = Math.sin(angle);
+		}
+		transform(ar, ai, cos, sin, false);
+		transform(br, bi, cos, sin, false);
+		for (int i = 0; i < n; i++) {
+			double re = ar[i] * br[i] - ai[i] * bi[i];
+			ai[i] = ar[i] * bi[i] + ai[i] * br[i];
+			ar[i] = re;
+		}
+		transform(ar, ai, cos, sin, true);
+		double tol = 32 * Math.ulp(1.0) * (32 - Integer.numberOfLeadingZeros(n)) * norm(a) * norm(b);
+		double[] c = new double[need];
+		for (int i = 0; i < need; i++) {
+			double v = ar[i] / n;
+			c[i] = Math.abs(v) <= tol ? 0 : v;
+		}
+		return c;
+	}
+
+	private static double norm(double[] a) {
+		double s = 0;
+		for (double v : a) {
+			s += v * v;
+		}
+		return Math.sqrt(s);
+	}
+
+	/**
+	 * In-place iterative radix-2 FFT of the complex array (re, im); the inverse transform
+	 * is not scaled by 1/n
+	 */
+	private static void transform(double[] re, double[] im, double[] cos, double[] sin, boolean inverse) {
+		int n = re.length;
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if (i < j) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+		for (int len = 2; len <= n; len <<= 1) {
+			int half = len / 2, step = n / len;
+			for (int i = 0; i < n; i += len) {
+				for (int j = 0; j < half; j++) {
+					double wr = cos[j * step];
+					double wi = inverse ? sin[j * step] : -sin[j * step];
+					int u = i + j, v = u + half;
+					double vr = re[v] * wr - im[v] * wi;
+					double vi = re[v] * wi + im[v] * wr;
+					re[v] = re[u] - vr;
+					im[v] = im[u] - vi;
+					re[u] += vr;
+					im[u] += vi;
+				}
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,521 @@
+package poly;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads polynomials in the text format of Polynomial.read:
+ * <pre>
+ *     <coeff> <degree>
+ *     <coeff> <degree>
+ *     ...
+ * </pre>
+ * Input is parsed directly from the bytes of a reusable buffer, or of the file itself
+ * when it is large enough to be worth memory-mapping. Terms are expected in descending
+ * order of degree; in strict mode any other order is an error, otherwise terms are
+ * sorted and terms of equal degree are added together. Terms with a zero coefficient
+ * are dropped. A reader may be reused for any number of reads, but not by several
+ * threads at once.
+ *
+ * Polynomials can also be saved to and loaded from a binary file, which is just the
+ * ArrayPolynomial term arrays, little-endian:
+ * <pre>
+ *     MAGIC (int), number of terms n (int), n degrees (int), n coefficients (double)
+ * </pre>
+ *
+ */
+public final class PolynomialReader {
+
+	/**
+	 * Size of the read buffer in bytes
+	 */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Default size in bytes from which files are memory-mapped rather than read into the
+	 * buffer
+	 */
+	public static final long MAP_THRESHOLD = 1 << 24;
+
+	/**
+	 * Largest region of a file mapped at a time
+	 */
+	static final int MAP_WINDOW = 1 << 30;
+
+	/**
+	 * First four bytes of a binary polynomial file, "POLY"
+	 */
+	public static final int MAGIC = 0x504f4c59;
+
+	/**
+	 * Exactly representable powers of ten, for the fast path of coefficient parsing
+	 */
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++) {
+			POW10[i] = POW10[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * Figures for one read
+	 */
+	public static final class Stats {
+		/**
+		 * Bytes read
+		 */
+		public long bytes;
+
+		/**
+		 * Terms read, before merging
+		 */
+		public long terms;
+
+		/**
+		 * Whether the degrees were in strictly descending order
+		 */
+		public boolean ordered = true;
+
+		/**
+		 * Elapsed time in nanoseconds
+		 */
+		public long nanos;
+
+		/**
+		 * Returns the read rate
+		 *
+		 * @return Megabytes read per second
+		 */
+		public double megabytesPerSecond() {
+			return nanos == 0 ? 0 : (bytes / 1e6) / (nanos / 1e9);
+		}
+
+		public String toString() {
+			return String.format("%d bytes, %d terms%s in %.3f ms (%.1f MB/s)", bytes, terms,
+					ordered ? "" : " (unordered)", nanos / 1e6, megabytesPerSecond());
+		}
+	}
+
+	private final boolean strict;
+
+	/**
+	 * Size in bytes from which files are memory-mapped rather than read into the buffer
+	 */
+	private final long mapThreshold;
+
+	private final ByteBuffer heap = ByteBuffer.allocate(BUFFER_SIZE);
+
+	/**
+	 * Buffer being parsed: the heap buffer, or the mapped window of the file
+	 */
+	private ByteBuffer buf;
+	private ReadableByteChannel channel;
+
+	/**
+	 * File being mapped, with the position of the next window and the end of the file
+	 */
+	private FileChannel mapped;
+	private long mapPos, mapEnd;
+
+	/**
+	 * Number of the line being read, for error messages
+	 */
+	private long line;
+	private Stats stats;
+
+	/**
+	 * Terms read so far, in input order
+	 */
+	private int[] degrees = new int[1024];
+	private double[] coeffs = new double[1024];
+	private int n;
+
+	/**
+	 * Characters of the coefficient being parsed
+	 */
+	private char[] token = new char[32];
+
+	/**
+	 * Values of the last number parsed
+	 */
+	private double coeff;
+	private int degree;
+
+	/**
+	 * Initializes a reader that sorts terms given out of order
+	 */
+	public PolynomialReader() {
+		this(false);
+	}
+
+	/**
+	 * Initializes a reader that maps files of MAP_THRESHOLD bytes or more
+	 *
+	 * @param strict Whether terms not in strictly descending order of degree are an error
+	 */
+	public PolynomialReader(boolean strict) {
+		this(strict, MAP_THRESHOLD);
+	}
+
+	/**
+	 * Initializes a reader
+	 *
+	 * @param strict Whether terms not in strictly descending order of degree are an error
+	 * @param mapThreshold Size in bytes from which files are memory-mapped rather than read
+	 *        into the buffer
+	 * @throws IllegalArgumentException If mapThreshold is negative
+	 */
+	public PolynomialReader(boolean strict, long mapThreshold) {
+		if (mapThreshold < 0) {
+			throw new IllegalArgumentException("Map threshold must not be negative: " + mapThreshold);
+		}
+		this.strict = strict;
+		this.mapThreshold = mapThreshold;
+	}
+
+	/**
+	 * Reads a polynomial from a text file
+	 *
+	 * @param file Name of the polynomial file
+	 * @return The polynomial
+	 * @throws IOException If there is a problem reading the file, or it is malformed
+	 */
+	public ArrayPolynomial read(String file)
+	throws IOException {
+		FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+		try {
+			long size = ch.size();
+			if (size < mapThreshold) {
+				return read(ch);
+			}
+			mapped = ch;
+			mapPos = 0;
+			mapEnd = size;
+			try {
+				return parse();
+			} finally {
+				mapped = null;
+			}
+		} finally {
+			ch.close();
+		}
+	}
+
+	/**
+	 * Reads a polynomial from a channel
+	 *
+	 * @param ch Channel from which the polynomial is read - not closed by this method
+	 * @return The polynomial
+	 * @throws IOException If there is a problem reading the input, or it is malformed
+	 */
+	public ArrayPolynomial read(ReadableByteChannel ch)
+	throws IOException {
+		channel = ch;
+		try {
+			return parse();
+		} finally {
+			channel = null;
+		}
+	}
+
+	/**
+	 * Reads a polynomial from a text file into linked list form
+	 *
+	 * @param file Name of the polynomial file
+	 * @return The polynomial linked list (front node), in ascending order of degree
+	 * @throws IOException If there is a problem reading the file, or it is malformed
+	 */
+	public Node readNode(String file)
+	throws IOException {
+		return read(file).toNode();
+	}
+
+	/**
+	 * Returns the figures for the last read
+	 *
+	 * @return Figures for the last read, null if nothing has been read
+	 */
+	public Stats stats() {
+		return stats;
+	}
+
+	private ArrayPolynomial parse()
+	throws IOException {
+		buf = heap;
+		buf.clear().limit(0);
+		line = 1;
+		n = 0;
+		stats = new Stats();
+		long start = System.nanoTime();
+		int prev = 0;
+		int c = next();
+		while (c != -1) {
+			c = skipBlanks(c);
+			if (c == '\n') {
+				line++;
+				c = next();
+				continue;
+			}
+			if (c == -1) {
+				break;
+			}
+			c = skipBlanks(parseCoeff(c));
+			c = skipBlanks(parseDegree(c));
+			if (c != '\n' && c != -1) {
+				throw new IOException("Line " + line + ": unexpected text after degree");
+			}
+			if (n > 0 && degree >= prev) {
+				if (strict) {
+					throw new IOException("Line " + line + ": degree " + degree
+							+ " is not below the previous degree " + prev);
+				}
+				stats.ordered = false;
+			}
+			prev = degree;
+			add(degree, coeff);
+		}
+		// descending input gives ascending arrays when reversed
+		int[] d = new int[n];
+		double[] cs = new double[n];
+		for (int i = 0; i < n; i++) {
+			d[i] = degrees[n - 1 - i];
+			cs[i] = coeffs[n - 1 - i];
+		}
+		stats.terms = n;
+		ArrayPolynomial p = ArrayPolynomial.normalize(d, cs, n);
+		stats.nanos = System.nanoTime() - start;
+		return p;
+	}
+
+	private void add(int d, double c) {
+		if (n == degrees.length) {
+			degrees = Arrays.copyOf(degrees, n * 2);
+			coeffs = Arrays.copyOf(coeffs, n * 2);
+		}
+		degrees[n] = d;
+		coeffs[n++] = c;
+	}
+
+	/**
+	 * Parses a coefficient starting at byte c into coeff. Plain decimals of up to 15
+	 * significant digits are converted directly; anything else is left to
+	 * Double.parseDouble.
+	 *
+	 * @return First byte after the coefficient
+	 */
+	private int parseCoeff(int c)
+	throws IOException {
+		int len = 0;
+		while (c != -1 && c != '\n' && !isSpace(c)) {
+			if (len == token.length) {
+				token = Arrays.copyOf(token, len * 2);
+			}
+			token[len++] = (char) c;
+			c = next();
+		}
+		int i = 0;
+		boolean neg = token[0] == '-';
+		if (neg || token[0] == '+') {
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0, frac = -1;
+		for (; i < len; i++) {
+			char ch = token[i];
+			if (ch >= '0' && ch <= '9') {
+				mantissa = mantissa * 10 + (ch - '0');
+				digits++;
+				if (frac >= 0) {
+					frac++;
+				}
+			} else if (ch == '.' && frac < 0) {
+				frac = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == len && digits > 0 && digits <= 15 && frac < POW10.length) {
+			// both mantissa and power of ten are exact, so the quotient is correctly rounded
+			double v = frac > 0 ? mantissa / POW10[frac] : mantissa;
+			coeff = neg ? -v : v;
+			return c;
+		}
+		try {
+			coeff = Double.parseDouble(new String(token, 0, len));
+		} catch (NumberFormatException e) {
+			throw new IOException("Line " + line + ": bad coefficient " + new String(token, 0, len));
+		}
+		return c;
+	}
+
+	/**
+	 * Parses a degree starting at byte c into degree
+	 *
+	 * @return First byte after the degree
+	 */
+	private int parseDegree(int c)
+	throws IOException {
+		if (c < '0' || c > '9') {
+			throw new IOException("Line " + line + ": degree expected");
+		}
+		long d = 0;
+		while (c >= '0' && c <= '9') {
+			d = d * 10 + (c - '0');
+			if (d > Integer.MAX_VALUE) {
+				throw new IOException("Line " + line + ": degree too large");
+			}
+			c = next();
+		}
+		degree = (int) d;
+		return c;
+	}
+
+	private int skipBlanks(int c)
+	throws IOException {
+		while (c != -1 && isSpace(c)) {
+			c = next();
+		}
+		return c;
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+	}
+
+	private int next()
+	throws IOException {
+		if (!buf.hasRemaining() && !fill()) {
+			return -1;
+		}
+		return buf.get() & 0xff;
+	}
+
+	private boolean fill()
+	throws IOException {
+		if (mapped != null) {
+			if (mapPos >= mapEnd) {
+				return false;
+			}
+			long size = Math.min(MAP_WINDOW, mapEnd - mapPos);
+			buf = mapped.map(FileChannel.MapMode.READ_ONLY, mapPos, size);
+			mapPos += size;
+			stats.bytes += size;
+			return true;
+		}
+		buf.clear();
+		int k;
+		do {
+			k = channel.read(buf);
+		} while (k == 0);
+		buf.flip();
+		if (k > 0) {
+			stats.bytes += k;
+		}
+		return k > 0;
+	}
+
+	/**
+	 * Saves a polynomial in binary form
+	 *
+	 * @param p Polynomial to be saved
+	 * @param file Name of the file to be written, replaced if it exists
+	 * @throws IOException If there is a problem writing the file
+	 */
+	public static void save(ArrayPolynomial p, String file)
+	throws IOException {
+		FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(MAGIC).putInt(p.size);
+			for (int i = 0; i < p.size; i++) {
+				if (out.remaining() < 4) {
+					drain(ch, out);
+				}
+				out.putInt(p.degrees[i]);
+			}
+			for (int i = 0; i < p.size; i++) {
+				if (out.remaining() < 8) {
+					drain(ch, out);
+				}
+				out.putDouble(p.coeffs[i]);
+			}
+			drain(ch, out);
+		} finally {
+			ch.close();
+		}
+	}
+
+	private static void drain(FileChannel ch, ByteBuffer out)
+	throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			ch.write(out);
+		}
+		out.clear();
+	}
+
+	/**
+	 * Loads a polynomial saved in binary form. The file is mapped and the term arrays are
+	 * copied out of it in bulk, so no text is parsed.
+	 *
+	 * @param file Name of the binary polynomial file
+	 * @return The polynomial
+	 * @throws IOException If there is a problem reading the file, or it is not a valid
+	 *         binary polynomial file
+	 */
+	public static ArrayPolynomial load(String file)
+	throws IOException {
+		FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+		try {
+			long size = ch.size();
+			if (size < 8) {
+				throw new IOException(file + ": not a binary polynomial file");
+			}
+			ByteBuffer header = map(ch, 0, 8);
+			if (header.getInt() != MAGIC) {
+				throw new IOException(file + ": not a binary polynomial file");
+			}
+			int count = header.getInt();
+			if (count < 0 || size != 8 + 12L * count) {
+				throw new IOException(file + ": size does not match term count");
+			}
+			int[] degrees = new int[count];
+			double[] coeffs = new double[count];
+			// copied a window at a time, as a mapping is limited to 2GB
+			long pos = 8;
+			for (int i = 0; i < count;) {
+				int k = Math.min(count - i, MAP_WINDOW / 4);
+				map(ch, pos, 4L * k).asIntBuffer().get(degrees, i, k);
+				pos += 4L * k;
+				i += k;
+			}
+			for (int i = 0; i < count;) {
+				int k = Math.min(count - i, MAP_WINDOW / 8);
+				map(ch, pos, 8L * k).asDoubleBuffer().get(coeffs, i, k);
+				pos += 8L * k;
+				i += k;
+			}
+			for (int i = 0; i < count; i++) {
+				if (degrees[i] < 0 || (i > 0 && degrees[i] <= degrees[i - 1]) || coeffs[i] == 0) {
+					throw new IOException(file + ": term " + i + " is out of order or zero");
+				}
+			}
+			return new ArrayPolynomial(degrees, coeffs, count);
+		} finally {
+			ch.close();
+		}
+	}
+
+	private static ByteBuffer map(FileChannel ch, long pos, long size)
+	throws IOException {
+		return ch.map(FileChannel.MapMode.READ_ONLY, pos, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+package poly;
+
+import java.math.BigInteger;
+
+/**
+ * An exact rational number, held in lowest terms with a positive denominator. Instances
+ * are immutable.
+ *
+ */
+public final class Rational implements Comparable<Rational> {
+
+	public static final Rational ZERO = new Rational(BigInteger.ZERO, BigInteger.ONE);
+	public static final Rational ONE = new Rational(BigInteger.ONE, BigInteger.ONE);
+
+	private final BigInteger num, den;
+
+	/**
+	 * Initializes a rational from a numerator and denominator already in lowest terms,
+	 * with the denominator positive
+	 */
+	private Rational(BigInteger num, BigInteger den) {
+		this.num = num;
+		this.den = den;
+	}
+
+	/**
+	 * Returns the rational num/den
+	 *
+	 * @param num Numerator
+	 * @param den Denominator
+	 * @return The rational in lowest terms
+	 * @throws ArithmeticException If den is zero
+	 */
+	public static Rational valueOf(BigInteger num, BigInteger den) {
+		if (den.signum() == 0) {
+			throw new ArithmeticException("Zero denominator");
+		}
+		if (den.signum() < 0) {
+			num = num.negate();
+			den = den.negate();
+		}
+		BigInteger g = num.gcd(den);
+		if (!g.equals(BigInteger.ONE)) {
+			num = num.divide(g);
+			den = den.divide(g);
+		}
+		return new Rational(num, den);
+	}
+
+	/**
+	 * Returns the rational num/den
+	 *
+	 * @param num Numerator
+	 * @param den Denominator
+	 * @return The rational in lowest terms
+	 * @throws ArithmeticException If den is zero
+	 */
+	public static Rational valueOf(long num, long den) {
+		return valueOf(BigInteger.valueOf(num), BigInteger.valueOf(den));
+	}
+
+	/**
+	 * Returns the integer n as a rational
+	 *
+	 * @param n Integer value
+	 * @return The rational n/1
+	 */
+	public static Rational valueOf(long n) {
+		return new Rational(BigInteger.valueOf(n), BigInteger.ONE);
+	}
+
+	/**
+	 * Returns the exact value of a double, which is always a dyadic rational
+	 *
+	 * @param d Finite double value
+	 * @return The rational equal to d
+	 * @throws ArithmeticException If d is infinite or NaN
+	 */
+	public static Rational valueOf(double d) {
+		if (Double.isNaN(d) || Double.isInfinite(d)) {
+			throw new ArithmeticException("Not a finite value: " + d);
+		}
+		if (d == 0) {
+			return ZERO;
+		}
+		long bits = Double.doubleToLongBits(d);
+		int exp = (int) ((bits >> 52) & 0x7ff);
+		long mantissa = bits & ((1L << 52) - 1);
+		if (exp == 0) { // subnormal
+			exp = 1;
+		} else {
+			mantissa |= 1L << 52;
+		}
+		exp -= 1075; // d = mantissa * 2^exp
+		BigInteger m = BigInteger.valueOf(d < 0 ? -mantissa : mantissa);
+		if (exp >= 0) {
+			return new Rational(m.shiftLeft(exp), BigInteger.ONE);
+		}
+		return valueOf(m, BigInteger.ONE.shiftLeft(-exp));
+	}
+
+	public BigInteger numerator() {
+		return num;
+	}
+
+	public BigInteger denominator() {
+		return den;
+	}
+
+	public int signum() {
+		return num.signum();
+	}
+
+	public Rational add(Rational r) {
+		if (den.equals(r.den)) {
+			return valueOf(num.add(r.num), den);
+		}
+		return valueOf(num.multiply(r.den).add(r.num.multiply(den)), den.multiply(r.den));
+	}
+
+	public Rational subtract(Rational r) {
+		return add(r.negate());
+	}
+
+	public Rational multiply(Rational r) {
+		return valueOf(num.multiply(r.num), den.multiply(r.den));
+	}
+
+	/**
+	 * @throws ArithmeticException If r is zero
+	 */
+	public Rational divide(Rational r) {
+		return valueOf(num.multiply(r.den), den.multiply(r.num));
+	}
+
+	public Rational negate() {
+		return new Rational(num.negate(), den);
+	}
+
+	/**
+	 * Returns the double nearest to this rational
+	 */
+	public double doubleValue() {
+		if (num.bitLength() < 53 && den.bitLength() < 53) {
+			return num.doubleValue() / den.doubleValue();
+		}
+		// scale so the quotient has at least 55 bits, with a sticky bit for any remainder,
+		// so converting it rounds once
+		int shift = den.bitLength() - num.bitLength() + 56;
+		BigInteger[] qr = shift >= 0 ? num.shiftLeft(shift).divideAndRemainder(den)
+				: num.divideAndRemainder(den.shiftLeft(-shift));
+		BigInteger q = qr[1].signum() == 0 ? qr[0] : qr[0].abs().setBit(0);
+		if (qr[1].signum() != 0 && num.signum() < 0) {
+			q = q.negate();
+		}
+		return Math.scalb(q.doubleValue(), -shift);
+	}
+
+	public int compareTo(Rational r) {
+		return num.multiply(r.den).compareTo(r.num.multiply(den));
+	}
+
+	public boolean equals(Object o) {
+		return o instanceof Rational && num.equals(((Rational) o).num) && den.equals(((Rational) o).den);
+	}
+
+	public int hashCode() {
+		return num.hashCode() * 31 + den.hashCode();
+	}
+
+	public String toString() {
+		return den.equals(BigInteger.ONE) ? num.toString() : num + "/" + den;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+package poly;
+
+import java.math.BigInteger;
+
+/**
+ * Arithmetic of a coefficient ring, for polynomials with exact coefficients. Elements
+ * are immutable values; a ring only supplies the operations on them.
+ *
+ * @param <T> Type of the ring elements
+ */
+public interface Ring<T> {
+
+	/**
+	 * Integers of any size
+	 */
+	Ring<BigInteger> INTEGERS = new Ring<BigInteger>() {
+		public BigInteger zero() {
+			return BigInteger.ZERO;
+		}
+
+		public BigInteger one() {
+			return BigInteger.ONE;
+		}
+
+		public BigInteger valueOf(long n) {
+			return BigInteger.valueOf(n);
+		}
+
+		public BigInteger add(BigInteger a, BigInteger b) {
+			return a.add(b);
+		}
+
+		public BigInteger subtract(BigInteger a, BigInteger b) {
+			return a.subtract(b);
+		}
+
+		public BigInteger multiply(BigInteger a, BigInteger b) {
+			return a.multiply(b);
+		}
+
+		public BigInteger negate(BigInteger a) {
+			return a.negate();
+		}
+
+		public boolean isZero(BigInteger a) {
+			return a.signum() == 0;
+		}
+	};
+
+	/**
+	 * Rational numbers of any size
+	 */
+	Ring<Rational> RATIONALS = new Ring<Rational>() {
+		public Rational zero() {
+			return Rational.ZERO;
+		}
+
+		public Rational one() {
+			return Rational.ONE;
+		}
+
+		public Rational valueOf(long n) {
+			return Rational.valueOf(n);
+		}
+
+		public Rational add(Rational a, Rational b) {
+			return a.add(b);
+		}
+
+		public Rational subtract(Rational a, Rational b) {
+			return a.subtract(b);
+		}
+
+		public Rational multiply(Rational a, Rational b) {
+			return a.multiply(b);
+		}
+
+		public Rational negate(Rational a) {
+			return a.negate();
+		}
+
+		public boolean isZero(Rational a) {
+			return a.signum() == 0;
+		}
+	};
+
+	/**
+	 * Returns the additive identity
+	 */
+	T zero();
+
+	/**
+	 * Returns the multiplicative identity
+	 */
+	T one();
+
+	/**
+	 * Returns the element n*one()
+	 */
+	T valueOf(long n);
+
+	T add(T a, T b);
+
+	T subtract(T a, T b);
+
+	T multiply(T a, T b);
+
+	T negate(T a);
+
+	/**
+	 * Whether an element is the additive identity
+	 */
+	boolean isZero(T a);
+}
\ No newline at end of file
@@ -0,0 +1,371 @@
+package poly;
+
+import java.util.Arrays;
+
+/**
+ * A polynomial with exact coefficients from any ring, such as Ring.INTEGERS or
+ * Ring.RATIONALS. Terms are stored as in ArrayPolynomial - parallel arrays in ascending
+ * order of degree with no zero coefficients - and the operations follow the same
+ * algorithms, with a coefficient being zero only when the ring says it is. Instances are
+ * immutable.
+ *
+ * @param <T> Type of the coefficients
+ */
+public final class RingPolynomial<T> {
+
+	final Ring<T> ring;
+
+	/**
+	 * Degrees of the terms, ascending
+	 */
+	final int[] degrees;
+
+	/**
+	 * Coefficients of the terms, none zero
+	 */
+	final Object[] coeffs;
+
+	/**
+	 * Number of terms
+	 */
+	final int size;
+
+	RingPolynomial(Ring<T> ring, int[] degrees, Object[] coeffs, int size) {
+		this.ring = ring;
+		this.degrees = degrees;
+		this.coeffs = coeffs;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the zero polynomial over a ring
+	 *
+	 * @param ring Coefficient ring
+	 * @return The zero polynomial
+	 */
+	public static <T> RingPolynomial<T> zero(Ring<T> ring) {
+		return new RingPolynomial<T>(ring, new int[0], new Object[0], 0);
+	}
+
+	/**
+	 * Builds a polynomial from terms in any order. Terms of equal degree are added
+	 * together, and terms that end up with a zero coefficient are dropped.
+	 *
+	 * @param ring Coefficient ring
+	 * @param degrees Degree of each term
+	 * @param coeffs Coefficient of each term
+	 * @return Polynomial
+	 * @throws IllegalArgumentException If the arrays differ in length or a degree is negative
+	 */
+	public static <T> RingPolynomial<T> of(Ring<T> ring, int[] degrees, T[] coeffs) {
+		if (degrees.length != coeffs.length) {
+			throw new IllegalArgumentException("Degree and coefficient arrays differ in length");
+		}
+		return new Terms<T>(ring).normalize(degrees.clone(),
+				Arrays.copyOf(coeffs, coeffs.length, Object[].class), degrees.length);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T cast(Object c) {
+		return (T) c;
+	}
+
+	/**
+	 * Returns the exact rational form of a polynomial with double coefficients
+	 *
+	 * @param p Polynomial
+	 * @return Polynomial with the same coefficients, as rationals
+	 */
+	public static RingPolynomial<Rational> exact(ArrayPolynomial p) {
+		Object[] c = new Object[p.size];
+		for (int i = 0; i < p.size; i++) {
+			c[i] = Rational.valueOf(p.coeffs[i]);
+		}
+		return new RingPolynomial<Rational>(Ring.RATIONALS, Arrays.copyOf(p.degrees, p.size), c, p.size);
+	}
+
+	/**
+	 * Returns a polynomial with rational coefficients rounded to doubles
+	 *
+	 * @param p Polynomial
+	 * @return Polynomial with each coefficient rounded to the nearest double
+	 */
+	public static ArrayPolynomial approximate(RingPolynomial<Rational> p) {
+		int[] d = new int[p.size];
+		double[] c = new double[p.size];
+		int k = 0;
+		for (int i = 0; i < p.size; i++) {
+			double v = p.coeffAt(i).doubleValue();
+			if (v != 0) {
+				d[k] = p.degrees[i];
+				c[k++] = v;
+			}
+		}
+		return new ArrayPolynomial(d, c, k);
+	}
+
+	/**
+	 * Returns the coefficient ring
+	 *
+	 * @return Coefficient ring
+	 */
+	public Ring<T> ring() {
+		return ring;
+	}
+
+	/**
+	 * Returns the number of terms
+	 *
+	 * @return Number of non-zero terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the degree of the polynomial
+	 *
+	 * @return Highest degree with a non-zero coefficient, -1 for the zero polynomial
+	 */
+	public int degree() {
+		return size == 0 ? -1 : degrees[size - 1];
+	}
+
+	/**
+	 * Returns the degree of a term
+	 *
+	 * @param i Term number, 0 being the lowest degree
+	 * @return Degree of term i
+	 */
+	public int degreeAt(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException("Term " + i + " of " + size);
+		}
+		return degrees[i];
+	}
+
+	/**
+	 * Returns the coefficient of a term
+	 *
+	 * @param i Term number, 0 being the lowest degree
+	 * @return Coefficient of term i
+	 */
+	public T coeffAt(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException("Term " + i + " of " + size);
+		}
+		return cast(coeffs[i]);
+	}
+
+	private static void check(RingPolynomial<?> p1, RingPolynomial<?> p2) {
+		if (p1.ring != p2.ring) {
+			throw new IllegalArgumentException("Polynomials over different rings");
+		}
+	}
+
+	/**
+	 * Returns the sum of two polynomials over the same ring
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return Sum of the polynomials
+	 */
+	public static <T> RingPolynomial<T> add(RingPolynomial<T> p1, RingPolynomial<T> p2) {
+		check(p1, p2);
+		return new Terms<T>(p1.ring).add(p1, p2);
+	}
+
+	/**
+	 * Returns the negation of a polynomial
+	 *
+	 * @param p Polynomial
+	 * @return -p
+	 */
+	public static <T> RingPolynomial<T> negate(RingPolynomial<T> p) {
+		Object[] c = new Object[p.size];
+		for (int i = 0; i < p.size; i++) {
+			c[i] = p.ring.negate(p.coeffAt(i));
+		}
+		return new RingPolynomial<T>(p.ring, Arrays.copyOf(p.degrees, p.size), c, p.size);
+	}
+
+	/**
+	 * Returns the difference of two polynomials over the same ring
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return p1 - p2
+	 */
+	public static <T> RingPolynomial<T> subtract(RingPolynomial<T> p1, RingPolynomial<T> p2) {
+		return add(p1, negate(p2));
+	}
+
+	/**
+	 * Returns the product of two polynomials over the same ring. As in ArrayPolynomial,
+	 * term products are accumulated in a dense array when the product's degree range is
+	 * small compared to their number, and otherwise merged in order of degree through a
+	 * heap.
+	 *
+	 * @param p1 First polynomial
+	 * @param p2 Second polynomial
+	 * @return Product of the polynomials
+	 */
+	public static <T> RingPolynomial<T> multiply(RingPolynomial<T> p1, RingPolynomial<T> p2) {
+		check(p1, p2);
+		if (p1.size == 0 || p2.size == 0) {
+			return zero(p1.ring);
+		}
+		return new Terms<T>(p1.ring).multiply(p1, p2);
+	}
+
+	/**
+	 * Arithmetic of a ring on coefficient arrays, for the term algorithms. An unset
+	 * (null) coefficient counts as zero.
+	 */
+	private static final class Terms<T> extends TermArithmetic<RingPolynomial<T>,Object[]> {
+		final Ring<T> ring;
+
+		Terms(Ring<T> ring) {
+			this.ring = ring;
+		}
+
+		int[] degrees(RingPolynomial<T> a) {
+			return a.degrees;
+		}
+
+		Object[] coeffs(RingPolynomial<T> a) {
+			return a.coeffs;
+		}
+
+		int size(RingPolynomial<T> a) {
+			return a.size;
+		}
+
+		RingPolynomial<T> polynomial(int[] degrees, Object[] coeffs, int size) {
+			return new RingPolynomial<T>(ring, degrees, coeffs, size);
+		}
+
+		Object[] newArray(int n) {
+			return new Object[n];
+		}
+
+		Object[] copyOf(Object[] a, int n) {
+			return Arrays.copyOf(a, n);
+		}
+
+		void copy(Object[] src, int i, Object[] dst, int k) {
+			dst[k] = src[i];
+		}
+
+		boolean isZero(Object[] a, int i) {
+			return a[i] == null || ring.isZero(RingPolynomial.<T>cast(a[i]));
+		}
+
+		void add(Object[] a, int i, Object[] b, int j, Object[] dst, int k) {
+			dst[k] = ring.add(RingPolynomial.<T>cast(a[i]), RingPolynomial.<T>cast(b[j]));
+		}
+
+		void multiply(Object[] a, int i, Object[] b, int j, Object[] dst, int k) {
+			dst[k] = ring.multiply(RingPolynomial.<T>cast(a[i]), RingPolynomial.<T>cast(b[j]));
+		}
+
+		void multiplyAdd(Object[] a, int i, Object[] b, int j, Object[] dst, int k) {
+			T product = ring.multiply(RingPolynomial.<T>cast(a[i]), RingPolynomial.<T>cast(b[j]));
+			dst[k] = dst[k] == null ? product : ring.add(RingPolynomial.<T>cast(dst[k]), product);
+		}
+	}
+
+	/**
+	 * Evaluates a polynomial at a given value by Horner's rule, stepping over the gaps
+	 * between the degrees of consecutive terms with powers of x
+	 *
+	 * @param p Polynomial to be evaluated
+	 * @param x Value at which evaluation is to be done
+	 * @return Value of polynomial p at x
+	 */
+	public static <T> T evaluate(RingPolynomial<T> p, T x) {
+		Ring<T> ring = p.ring;
+		if (p.size == 0) {
+			return ring.zero();
+		}
+		T acc = p.coeffAt(p.size - 1);
+		for (int i = p.size - 2; i >= 0; i--) {
+			int gap = p.degrees[i + 1] - p.degrees[i];
+			acc = ring.add(ring.multiply(acc, gap == 1 ? x : pow(ring, x, gap)), p.coeffAt(i));
+		}
+		return p.degrees[0] == 0 ? acc : ring.multiply(acc, pow(ring, x, p.degrees[0]));
+	}
+
+	/**
+	 * Returns x^n by repeated squaring
+	 */
+	static <T> T pow(Ring<T> ring, T x, int n) {
+		T result = ring.one();
+		while (n > 0) {
+			if ((n & 1) != 0) {
+				result = ring.multiply(result, x);
+			}
+			n >>>= 1;
+			if (n > 0) {
+				x = ring.multiply(x, x);
+			}
+		}
+		return result;
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof RingPolynomial)) {
+			return false;
+		}
+		RingPolynomial<?> p = (RingPolynomial<?>) o;
+		if (p.ring != ring || p.size != size) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (degrees[i] != p.degrees[i] || !coeffs[i].equals(p.coeffs[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		int h = size;
+		for (int i = 0; i < size; i++) {
+			h = h * 31 + degrees[i];
+			h = h * 31 + coeffs[i].hashCode();
+		}
+		return h;
+	}
+
+	/**
+	 * Returns string representation of this polynomial, in descending order of degrees
+	 * as Polynomial.toString does
+	 */
+	public String toString() {
+		return toString(degrees, coeffs, size);
+	}
+
+	/**
+	 * Returns the terms given in ascending order as Polynomial.toString does, highest
+	 * degree first and each term written as Term.toString writes it
+	 */
+	static String toString(int[] degrees, Object[] coeffs, int size) {
+		if (size == 0) {
+			return "0";
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = size - 1; i >= 0; i--) {
+			if (i < size - 1) {
+				sb.append(" + ");
+			}
+			sb.append(coeffs[i]);
+			if (degrees[i] == 1) {
+				sb.append('x');
+			} else if (degrees[i] > 1) {
+				sb.append("x^").append(degrees[i]);
+			}
+		}
+		return sb.toString();
+	}
+}
\ No newline at end of file
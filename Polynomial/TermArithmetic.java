@@ -0,0 +1,242 @@
+package poly;
+
+import java.util.Arrays;
+
+/**
+ * The term algorithms shared by the exact polynomial types: polynomials held as parallel
+ * arrays of degrees in ascending order and coefficients, none of them zero. Merging two
+ * polynomials, putting terms in order and multiplying term by term are written here once;
+ * a subclass supplies the coefficient arithmetic over its own array type, so that
+ * ModularPolynomial keeps its coefficients in a long[] and RingPolynomial in an Object[].
+ * ArrayPolynomial keeps its own loops over double[], which the JIT can vectorize.
+ *
+ * @param <P> Polynomial type
+ * @param <A> Type of the coefficient arrays
+ */
+abstract class TermArithmetic<P,A> {
+
+	/**
+	 * Returns the degrees of a polynomial's terms
+	 */
+	abstract int[] degrees(P p);
+
+	/**
+	 * Returns the coefficients of a polynomial's terms
+	 */
+	abstract A coeffs(P p);
+
+	/**
+	 * Returns the number of terms of a polynomial
+	 */
+	abstract int size(P p);
+
+	/**
+	 * Wraps terms in ascending order of degree, with no zero coefficients, as a polynomial
+	 */
+	abstract P polynomial(int[] degrees, A coeffs, int size);
+
+	/**
+	 * Returns an array of n zero coefficients
+	 */
+	abstract A newArray(int n);
+
+	/**
+	 * Returns a copy of a coefficient array, truncated or padded with zeros to length n
+	 */
+	abstract A copyOf(A a, int n);
+
+	/**
+	 * Sets dst[k] to src[i]
+	 */
+	abstract void copy(A src, int i, A dst, int k);
+
+	/**
+	 * Whether a[i] is zero
+	 */
+	abstract boolean isZero(A a, int i);
+
+	/**
+	 * Sets dst[k] to a[i] + b[j]
+	 */
+	abstract void add(A a, int i, A b, int j, A dst, int k);
+
+	/**
+	 * Sets dst[k] to a[i] * b[j]
+	 */
+	abstract void multiply(A a, int i, A b, int j, A dst, int k);
+
+	/**
+	 * Adds a[i] * b[j] to dst[k]
+	 */
+	abstract void multiplyAdd(A a, int i, A b, int j, A dst, int k);
+
+	/**
+	 * Returns the sum of two polynomials, merging their terms in order of degree
+	 */
+	final P add(P p1, P p2) {
+		int[] d1 = degrees(p1), d2 = degrees(p2);
+		A c1 = coeffs(p1), c2 = coeffs(p2);
+		int n1 = size(p1), n2 = size(p2);
+		int[] d = new int[n1 + n2];
+		A c = newArray(n1 + n2);
+		int i = 0, j = 0, k = 0;
+		while (i < n1 && j < n2) {
+			if (d1[i] < d2[j]) {
+				d[k] = d1[i];
+				copy(c1, i++, c, k++);
+			} else if (d1[i] > d2[j]) {
+				d[k] = d2[j];
+				copy(c2, j++, c, k++);
+			} else {
+				add(c1, i, c2, j, c, k);
+				if (!isZero(c, k)) {
+					d[k++] = d1[i];
+				}
+				i++;
+				j++;
+			}
+		}
+		for (; i < n1; i++, k++) {
+			d[k] = d1[i];
+			copy(c1, i, c, k);
+		}
+		for (; j < n2; j++, k++) {
+			d[k] = d2[j];
+			copy(c2, j, c, k);
+		}
+		return polynomial(d, c, k);
+	}
+
+	/**
+	 * Sorts terms held in the given arrays, adding together terms of equal degree and
+	 * dropping zeros. The arrays are reused for the result.
+	 *
+	 * @throws IllegalArgumentException If a degree is negative
+	 */
+	final P normalize(int[] degrees, A coeffs, int n) {
+		int[] order = ArrayPolynomial.sortOrder(degrees, n);
+		if (order != null) {
+			int[] d = new int[n];
+			A c = newArray(n);
+			for (int i = 0; i < n; i++) {
+				d[i] = degrees[order[i]];
+				copy(coeffs, order[i], c, i);
+			}
+			degrees = d;
+			coeffs = c;
+		}
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			if (k > 0 && degrees[k - 1] == degrees[i]) {
+				add(coeffs, k - 1, coeffs, i, coeffs, k - 1);
+			} else {
+				if (k > 0 && isZero(coeffs, k - 1)) {
+					k--;
+				}
+				degrees[k] = degrees[i];
+				copy(coeffs, i, coeffs, k);
+				k++;
+			}
+		}
+		if (k > 0 && isZero(coeffs, k - 1)) {
+			k--;
+		}
+		return polynomial(degrees, coeffs, k);
+	}
+
+	/**
+	 * Returns the polynomial with the non-zero coefficients of acc[0..n-1], acc[i] being
+	 * that of degree low + i
+	 */
+	final P fromDense(A acc, int n, int low) {
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			if (!isZero(acc, i)) {
+				count++;
+			}
+		}
+		int[] d = new int[count];
+		A c = newArray(count);
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			if (!isZero(acc, i)) {
+				d[k] = low + i;
+				copy(acc, i, c, k++);
+			}
+		}
+		return polynomial(d, c, count);
+	}
+
+	/**
+	 * Returns the product of two non-zero polynomials, multiplied term by term. As in
+	 * ArrayPolynomial, term products are accumulated in a dense array when the product's
+	 * degree range is small compared to their number, and otherwise the rows of the
+	 * shorter operand are merged in order of degree through a heap.
+	 */
+	final P multiply(P p1, P p2) {
+		int[] d1 = degrees(p1), d2 = degrees(p2);
+		int n1 = size(p1), n2 = size(p2);
+		long span = (long) d1[n1 - 1] + d2[n2 - 1] - d1[0] - d2[0] + 1;
+		if (span <= 4L * n1 * n2 && span <= Integer.MAX_VALUE - 8) {
+			A c1 = coeffs(p1), c2 = coeffs(p2);
+			int low = d1[0] + d2[0];
+			A acc = newArray((int) span);
+			for (int i = 0; i < n1; i++) {
+				int base = d1[i] - low;
+				for (int j = 0; j < n2; j++) {
+					multiplyAdd(c1, i, c2, j, acc, base + d2[j]);
+				}
+			}
+			return fromDense(acc, (int) span, low);
+		}
+		return n1 <= n2 ? multiplyHeap(p1, p2) : multiplyHeap(p2, p1);
+	}
+
+	private P multiplyHeap(P rows, P other) {
+		int[] rd = degrees(rows), od = degrees(other);
+		A rc = coeffs(rows), oc = coeffs(other);
+		int n = size(rows), m = size(other);
+		int[] next = new int[n];
+		int[] heap = new int[n];
+		long[] key = new long[n];
+		int hs = 0;
+		for (int i = 0; i < n; i++) {
+			key[hs] = (long) rd[i] + od[0];
+			heap[hs] = i;
+			ArrayPolynomial.siftUp(heap, key, hs++);
+		}
+		int cap = Math.max(16, Math.min(n * m, 1 << 20));
+		int[] d = new int[cap];
+		A c = newArray(cap);
+		int k = 0;
+		while (hs > 0) {
+			int row = heap[0];
+			long deg = key[0];
+			if (k > 0 && d[k - 1] == deg) {
+				multiplyAdd(rc, row, oc, next[row], c, k - 1);
+			} else {
+				if (k > 0 && isZero(c, k - 1)) {
+					k--;
+				}
+				if (k == d.length) {
+					d = Arrays.copyOf(d, k * 2);
+					c = copyOf(c, k * 2);
+				}
+				d[k] = (int) deg;
+				multiply(rc, row, oc, next[row], c, k++);
+			}
+			if (++next[row] < m) {
+				key[0] = (long) rd[row] + od[next[row]];
+			} else {
+				hs--;
+				heap[0] = heap[hs];
+				key[0] = key[hs];
+			}
+			ArrayPolynomial.siftDown(heap, key, 0, hs);
+		}
+		if (k > 0 && isZero(c, k - 1)) {
+			k--;
+		}
+		return polynomial(d, c, k);
+	}
+}
\ No newline at end of file